@@ -10,7 +10,7 @@ package com.se300.ledger;
 public class Account {
 
     private String address;
-    private Integer balance;
+    private int balance;
 
     /**
      * Account Constructor
@@ -19,7 +19,7 @@ public class Account {
      */
     public Account(String address, Integer balance) {
         this.address = address;
-        this.balance = balance;
+        this.balance = balance == null ? 0 : balance;
     }
 
     /**
@@ -51,7 +51,7 @@ public class Account {
      * @param balance
      */
     public void setBalance(Integer balance) {
-        this.balance = balance;
+        this.balance = balance == null ? 0 : balance;
     }
 
     /**
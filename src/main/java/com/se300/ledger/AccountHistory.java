@@ -0,0 +1,194 @@
+package com.se300.ledger;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AccountHistory class implementation keeping the committed balance of every account as a version
+ * chain, the numbers of the blocks that changed the account and the balances after them in sorted
+ * primitive arrays. The balance as of any block is found by binary search over the changes of the
+ * account, without keeping account maps for old blocks. History starts at the first block it has
+ * been created for, such as the tip block of a restored snapshot. It is the only copy of the
+ * committed balances of the Ledger, and it also keeps the total of the latest balances.
+ * Balances are recorded by a single writer at a time, readers do not take the commit lock.
+ */
+public class AccountHistory {
+
+    private static final int INITIAL_VERSIONS = 4;
+
+    private final Map<String,Versions> accounts = new ConcurrentHashMap<>();
+    private final int firstBlockNumber;
+    // Sum of the latest balances, updated by the writer
+    private volatile long totalBalance;
+
+    /**
+     * AccountHistory Constructor for history starting with the genesis block
+     */
+    public AccountHistory() {
+        this(1);
+    }
+
+    /**
+     * AccountHistory Constructor
+     * @param firstBlockNumber number of the first block covered by the history
+     */
+    public AccountHistory(int firstBlockNumber) {
+        this.firstBlockNumber = firstBlockNumber;
+    }
+
+    /**
+     * Getter method for the number of the first block covered by the history
+     * @return
+     */
+    public int getFirstBlockNumber() {
+        return firstBlockNumber;
+    }
+
+    /**
+     * Check if balances as of the block can be answered from the history
+     * @param blockNumber
+     * @return
+     */
+    public boolean covers(int blockNumber) {
+        return blockNumber >= firstBlockNumber;
+    }
+
+    /**
+     * Record balance of the account after the block. Blocks have to be recorded in block number order
+     * @param address
+     * @param blockNumber
+     * @param balance
+     */
+    public void record(String address, int blockNumber, int balance) {
+        long previous = accounts.computeIfAbsent(address, key -> new Versions()).add(blockNumber, balance);
+        totalBalance += balance - previous;
+    }
+
+    /**
+     * Get sum of the latest balances of all accounts
+     * @return
+     */
+    public long getTotalBalance() {
+        return totalBalance;
+    }
+
+    /**
+     * Get number of accounts in the history
+     * @return
+     */
+    public int getAccountCount() {
+        return accounts.size();
+    }
+
+    /**
+     * Get balance of the account as of the block
+     * @param address
+     * @param blockNumber
+     * @return Integer or Null if the account did not exist as of the block
+     */
+    public Integer getBalance(String address, int blockNumber) {
+        Versions versions = address == null ? null : accounts.get(address);
+        return versions == null ? null : versions.get(blockNumber);
+    }
+
+    /**
+     * Get account as of the block
+     * @param address
+     * @param blockNumber
+     * @return Account or Null if the account did not exist as of the block
+     */
+    public Account getAccount(String address, int blockNumber) {
+        Integer balance = getBalance(address, blockNumber);
+        return balance == null ? null : new Account(address, balance);
+    }
+
+    /**
+     * Get every account as of the block
+     * @param blockNumber
+     * @return Map of accounts by address
+     */
+    public Map<String,Account> getAccounts(int blockNumber) {
+        Map<String,Account> result = new HashMap<>();
+        accounts.forEach((address, versions) -> {
+            Integer balance = versions.get(blockNumber);
+            if (balance != null) {
+                result.put(address, new Account(address, balance));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Get balance of every account as of the block
+     * @param blockNumber
+     * @return Map of balances by address
+     */
+    public Map<String,Integer> getBalances(int blockNumber) {
+        Map<String,Integer> result = new HashMap<>();
+        accounts.forEach((address, versions) -> {
+            Integer balance = versions.get(blockNumber);
+            if (balance != null) {
+                result.put(address, balance);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Get number of recorded changes of the account
+     * @param address
+     * @return
+     */
+    public int getVersionCount(String address) {
+        Versions versions = accounts.get(address);
+        return versions == null ? 0 : versions.size();
+    }
+
+    /**
+     * Version chain of a single account
+     */
+    private static final class Versions {
+
+        private int[] blockNumbers = new int[INITIAL_VERSIONS];
+        private int[] balances = new int[INITIAL_VERSIONS];
+        private int size;
+
+        /**
+         * Add balance after the block
+         * @return int representing the latest balance before it, 0 for a new account
+         */
+        synchronized int add(int blockNumber, int balance) {
+            int previous = size > 0 ? balances[size - 1] : 0;
+            if (size > 0 && blockNumbers[size - 1] >= blockNumber) {
+                if (blockNumbers[size - 1] > blockNumber) {
+                    throw new IllegalArgumentException("Block " + blockNumber + " Is Out Of Order");
+                }
+                balances[size - 1] = balance;
+                return previous;
+            }
+            if (size == blockNumbers.length) {
+                blockNumbers = Arrays.copyOf(blockNumbers, size * 2);
+                balances = Arrays.copyOf(balances, size * 2);
+            }
+            blockNumbers[size] = blockNumber;
+            balances[size] = balance;
+            size++;
+            return previous;
+        }
+
+        synchronized Integer get(int blockNumber) {
+            int index = Arrays.binarySearch(blockNumbers, 0, size, blockNumber);
+            if (index < 0) {
+                //Last change before the block
+                index = -index - 2;
+            }
+            return index < 0 ? null : balances[index];
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.se300.ledger;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * AccountSnapshot class implementation capturing committed account state at the tip of the chain.
+ * The snapshot holds the tip block number and hash, the committed balances and fees and the write
+ * ahead log position following the seal of the tip block, so that a restart only replays the log
+ * records written after it. Snapshots are written to a temporary file that is moved into place once
+ * complete, encoded by LedgerCodec in chunks with a CRC32 checksum of the whole content at the end.
+ * Committed transaction ids are not part of the snapshot. They are written next to it incrementally,
+ * each transaction file holding the ids of the blocks committed since the previous one.
+ */
+public class AccountSnapshot {
+
+    private static final int MAGIC = 0x4c534e50;
+    private static final int TRANSACTIONS_MAGIC = 0x4c545849;
+
+    // Encoded entries are written out whenever this many bytes have been collected
+    private static final int FLUSH_SIZE = 1 << 16;
+
+    private final int blockNumber;
+    private final String blockHash;
+    private final long totalFees;
+    private final int validatedThrough;
+    private final long logPosition;
+    private final String[] addresses;
+    private final long[] balances;
+
+    /**
+     * AccountSnapshot Constructor
+     * @param blockNumber number of the tip block
+     * @param blockHash hash of the tip block
+     * @param totalFees fees collected by committed blocks
+     * @param validatedThrough number of the last validated block
+     * @param logPosition write ahead log position following the seal of the tip block, -1 without a log
+     * @param addresses committed account addresses
+     * @param balances committed account balances in the order of the addresses
+     */
+    public AccountSnapshot(int blockNumber, String blockHash, long totalFees, int validatedThrough,
+                           long logPosition, String[] addresses, long[] balances) {
+        if (addresses.length != balances.length) {
+            throw new IllegalArgumentException("Invalid Account Snapshot");
+        }
+        this.blockNumber = blockNumber;
+        this.blockHash = blockHash;
+        this.totalFees = totalFees;
+        this.validatedThrough = validatedThrough;
+        this.logPosition = logPosition;
+        this.addresses = addresses;
+        this.balances = balances;
+    }
+
+    /**
+     * Getter method for the tip block number
+     * @return
+     */
+    public int getBlockNumber() {
+        return blockNumber;
+    }
+
+    /**
+     * Getter method for the tip block hash
+     * @return
+     */
+    public String getBlockHash() {
+        return blockHash;
+    }
+
+    /**
+     * Getter method for fees collected by committed blocks
+     * @return
+     */
+    public long getTotalFees() {
+        return totalFees;
+    }
+
+    /**
+     * Getter method for the number of the last validated block
+     * @return
+     */
+    public int getValidatedThrough() {
+        return validatedThrough;
+    }
+
+    /**
+     * Getter method for the write ahead log position following the seal of the tip block
+     * @return long representing file position or -1 if the ledger had no log
+     */
+    public long getLogPosition() {
+        return logPosition;
+    }
+
+    /**
+     * Get number of accounts in the snapshot
+     * @return
+     */
+    public int getAccountCount() {
+        return addresses.length;
+    }
+
+    /**
+     * Getter method for the address of the account at the index
+     * @param index
+     * @return
+     */
+    public String getAddress(int index) {
+        return addresses[index];
+    }
+
+    /**
+     * Getter method for the balance of the account at the index
+     * @param index
+     * @return
+     */
+    public long getBalance(int index) {
+        return balances[index];
+    }
+
+    /**
+     * Write snapshot to the file, replacing it only once the snapshot is complete
+     * @param file
+     * @throws IOException
+     */
+    public void write(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        LedgerCodec codec = new LedgerCodec(FLUSH_SIZE + 1024);
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            codec.clear().putInt(MAGIC).putByte(LedgerCodec.VERSION);
+            codec.putInt(blockNumber).putString(blockHash).putLong(totalFees).putInt(validatedThrough)
+                    .putLong(logPosition);
+
+            codec.putInt(addresses.length);
+            for (int i = 0; i < addresses.length; i++) {
+                codec.putAccount(addresses[i], balances[i]);
+                flush(codec, channel, crc, FLUSH_SIZE);
+            }
+
+            finish(codec, channel, crc);
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Write ids of the transactions committed in blocks after fromBlock up to toBlock into the
+     * transaction file of toBlock in the directory
+     * @param directory
+     * @param fromBlock last block covered by the previous transaction file, 0 if there is none
+     * @param toBlock tip block of the snapshot
+     * @param transactions block number of every transaction committed in the range
+     * @throws IOException
+     */
+    public static void writeTransactions(Path directory, int fromBlock, int toBlock,
+                                         Map<String,Integer> transactions) throws IOException {
+        Path file = directory.resolve(String.format("transactions-%010d.dat", toBlock));
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        LedgerCodec codec = new LedgerCodec(FLUSH_SIZE + 1024);
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            codec.clear().putInt(TRANSACTIONS_MAGIC).putByte(LedgerCodec.VERSION);
+            codec.putInt(fromBlock).putInt(toBlock).putInt(transactions.size());
+            for (Map.Entry<String,Integer> entry : transactions.entrySet()) {
+                codec.putString(entry.getKey()).putInt(entry.getValue());
+                flush(codec, channel, crc, FLUSH_SIZE);
+            }
+            finish(codec, channel, crc);
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Get last block covered by the transaction files in the directory. Damaged files are ignored,
+     * the next transaction file covers their blocks again
+     * @param directory
+     * @return int representing block number or 0 if there is no transaction file
+     * @throws IOException
+     */
+    public static int getTransactionsThrough(Path directory) throws IOException {
+        int covered = 0;
+        for (Path file : listTransactions(directory)) {
+            try {
+                int[] range = readTransactionRange(file);
+                if (range[0] <= covered) {
+                    covered = Math.max(covered, range[1]);
+                }
+            } catch (IOException e) {
+                //Covered again by the next file
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * Read ids of the transactions committed up to the block from the transaction files in the directory
+     * @param directory
+     * @param throughBlock tip block of the restored snapshot
+     * @return Map of block number by transaction id
+     * @throws IOException if the files do not cover every block up to the given one
+     */
+    public static Map<String,Integer> readTransactions(Path directory, int throughBlock) throws IOException {
+        Map<String,Integer> transactions = new HashMap<>();
+        int covered = 0;
+
+        for (Path file : listTransactions(directory)) {
+            ByteBuffer record;
+            try {
+                record = readChecked(file, TRANSACTIONS_MAGIC);
+            } catch (IOException e) {
+                //Blocks of a damaged file are covered again by a later file
+                continue;
+            }
+            try {
+                int fromBlock = record.getInt();
+                int toBlock = record.getInt();
+                if (fromBlock > covered) {
+                    continue;
+                }
+                int count = record.getInt();
+                for (int i = 0; i < count; i++) {
+                    String transactionId = LedgerCodec.getString(record);
+                    int blockNumber = record.getInt();
+                    if (blockNumber <= throughBlock) {
+                        transactions.put(transactionId, blockNumber);
+                    }
+                }
+                covered = Math.max(covered, Math.min(toBlock, throughBlock));
+            } catch (IllegalStateException | BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new IOException("Transaction File Is Corrupt: " + file, e);
+            }
+        }
+
+        if (covered < throughBlock) {
+            throw new IOException("Transaction Files End At Block " + covered);
+        }
+        return transactions;
+    }
+
+    /**
+     * Remove transaction files covering blocks after the given one, once the chain continues from it
+     * @param directory
+     * @param throughBlock
+     * @throws IOException
+     */
+    public static void truncateTransactions(Path directory, int throughBlock) throws IOException {
+        for (Path file : listTransactions(directory)) {
+            try {
+                if (readTransactionRange(file)[1] <= throughBlock) {
+                    continue;
+                }
+            } catch (IOException e) {
+                //Damaged files are removed as well
+            }
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<Path> listTransactions(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "transactions-*.dat")) {
+                stream.forEach(files::add);
+            }
+        }
+        //Names are ordered by block number
+        files.sort(null);
+        return files;
+    }
+
+    private static int[] readTransactionRange(Path file) throws IOException {
+        ByteBuffer record = readChecked(file, TRANSACTIONS_MAGIC);
+        try {
+            return new int[] {record.getInt(), record.getInt()};
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Transaction File Is Corrupt: " + file, e);
+        }
+    }
+
+    private static void finish(LedgerCodec codec, FileChannel channel, CRC32 crc) throws IOException {
+        flush(codec, channel, crc, 0);
+
+        //Checksum of everything written before it
+        codec.putInt((int) crc.getValue());
+        ByteBuffer buffer = codec.getBuffer().flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    private static void flush(LedgerCodec codec, FileChannel channel, CRC32 crc, int threshold) throws IOException {
+        ByteBuffer buffer = codec.getBuffer();
+        if (buffer.position() < threshold) {
+            return;
+        }
+        buffer.flip();
+        crc.update(buffer.array(), 0, buffer.limit());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        codec.clear();
+    }
+
+    /**
+     * Read snapshot from the file
+     * @param file
+     * @return AccountSnapshot
+     * @throws IOException if the file is not a complete snapshot
+     */
+    public static AccountSnapshot read(Path file) throws IOException {
+        ByteBuffer record = readChecked(file, MAGIC);
+
+        try {
+            int blockNumber = record.getInt();
+            String blockHash = LedgerCodec.getString(record);
+            long totalFees = record.getLong();
+            int validatedThrough = record.getInt();
+            long logPosition = record.getLong();
+
+            int accountCount = record.getInt();
+            String[] addresses = new String[accountCount];
+            long[] balances = new long[accountCount];
+            for (int i = 0; i < accountCount; i++) {
+                addresses[i] = LedgerCodec.getString(record);
+                balances[i] = record.getLong();
+            }
+
+            return new AccountSnapshot(blockNumber, blockHash, totalFees, validatedThrough, logPosition,
+                    addresses, balances);
+        } catch (IllegalStateException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Account Snapshot Is Corrupt: " + file, e);
+        }
+    }
+
+    /**
+     * Read the file, checking its magic number, checksum and encoding version
+     * @param file
+     * @param magic
+     * @return ByteBuffer positioned after the version
+     * @throws IOException if the file is not complete
+     */
+    private static ByteBuffer readChecked(Path file, int magic) throws IOException {
+        ByteBuffer record = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (record.remaining() < 9 || record.getInt() != magic) {
+            throw new IOException("Not A Snapshot File: " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.limit() - 4);
+        if ((int) crc.getValue() != record.getInt(record.limit() - 4)) {
+            throw new IOException("Snapshot File Is Corrupt: " + file);
+        }
+        try {
+            LedgerCodec.checkVersion(record);
+        } catch (IllegalStateException e) {
+            throw new IOException("Snapshot File Is Corrupt: " + file, e);
+        }
+        return record;
+    }
+}
@@ -1,6 +1,10 @@
 package com.se300.ledger;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,9 +21,22 @@ public class Block {
     private Integer blockNumber;
     private String previousHash;
     private String hash;
-    private final Map<String,Account> accountBalanceMap = new HashMap<String,Account>();
+    private PersistentHashMap<String,Account> accountBalanceMap = PersistentHashMap.empty();
+    private final Map<String,Account> changedAccountMap = new HashMap<String,Account>();
+    private boolean copyOnWrite;
     private final List<Transaction> transactionList = new ArrayList<Transaction>();
+    // Position of every transaction in the transaction list by id
+    private final Map<String,Integer> transactionPositions = new HashMap<String,Integer>();
     private Block previousBlock;
+    private long byteSize;
+    private long openedAt;
+    private volatile BlockSealPolicy sealPolicy;
+    // Loader resolving the previous block once it is no longer held in memory
+    private BlockLoader blockLoader;
+    // Block loaded from the store holds only the accounts it has changed
+    private boolean partialAccounts;
+    // History resolving the other accounts of a loaded block, walking back when Null
+    private volatile AccountHistory accountHistory;
 
     /**
      * Block Constructor
@@ -80,11 +97,37 @@ public class Block {
     }
 
     /**
-     * Get a map of all the accounts in the system
+     * Get a read-only map of all the accounts in the system
      * @return
      */
     public Map<String, Account> getAccountBalanceMap() {
-        return accountBalanceMap;
+        if (!partialAccounts) {
+            return accountBalanceMap.asMap();
+        }
+
+        AccountHistory history = accountHistory;
+        if (history != null) {
+            Map<String,Account> accounts = history.getAccounts(blockNumber);
+            for (Account account : getChangedAccounts()) {
+                accounts.put(account.getAddress(), account);
+            }
+            return Collections.unmodifiableMap(accounts);
+        }
+
+        //Walk back to a block holding every account, then apply the changes forward
+        Deque<Block> blocks = new ArrayDeque<>();
+        Block block = this;
+        while (block != null && block.partialAccounts) {
+            blocks.push(block);
+            block = block.getPreviousBlock();
+        }
+        PersistentHashMap<String,Account> accounts = block == null ? PersistentHashMap.empty() : block.accountBalanceMap;
+        while (!blocks.isEmpty()) {
+            for (Account account : blocks.pop().getChangedAccounts()) {
+                accounts = accounts.put(account.getAddress(), account);
+            }
+        }
+        return accounts.asMap();
     }
 
     /**
@@ -95,30 +138,206 @@ public class Block {
         return transactionList;
     }
 
+    /**
+     * Helper Method for adding Transaction to the Block
+     * @param transaction
+     * @param size serialized size of the transaction
+     */
+    public synchronized void addTransaction(Transaction transaction, int size){
+        if(this.transactionList.isEmpty()){
+            this.openedAt = System.currentTimeMillis();
+        }
+        this.transactionPositions.put(transaction.getTransactionId(), this.transactionList.size());
+        this.transactionList.add(transaction);
+        this.byteSize += size;
+    }
+
+    /**
+     * Getter method for serialized size of the transactions in the block
+     * @return
+     */
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * Getter method for the time the first transaction has been added to the block
+     * @return
+     */
+    public long getOpenedAt() {
+        return openedAt;
+    }
+
+    /**
+     * Getter method for the policy the block has been sealed under. An open block holding more
+     * than a newly set policy allows keeps the policy it has been filled under until it is sealed
+     * @return BlockSealPolicy or Null if the block follows the policy of the ledger
+     */
+    public BlockSealPolicy getSealPolicy() {
+        return sealPolicy;
+    }
+
+    /**
+     * Setter method for the policy the block has been sealed under
+     * @param sealPolicy
+     */
+    public void setSealPolicy(BlockSealPolicy sealPolicy) {
+        this.sealPolicy = sealPolicy;
+    }
+
     /**
      * Helper Method for adding Account to the Block
      * @param address
      * @param account
      */
-    public void addAccount(String address, Account account){
-        this.accountBalanceMap.put(address, account);
+    public synchronized void addAccount(String address, Account account){
+        this.accountBalanceMap = this.accountBalanceMap.put(address, account);
+        this.changedAccountMap.put(address, account);
     }
 
     /**
-     * Get Account from the Blockchain given account address
+     * Get Account from the Blockchain given account address.
+     * An account not changed by the block is shared with the previous block,
+     * use getAccountForUpdate to change it
      * @param address
      * @return
      */
-    public Account getAccount(String address){
+    public synchronized Account getAccount(String address){
+        Account account = this.changedAccountMap.get(address);
+        if(account != null){
+            return account;
+        }
+
+        if(partialAccounts){
+            AccountHistory history = accountHistory;
+            if(history != null){
+                return history.getAccount(address, blockNumber);
+            }
+
+            //Accounts not changed by a stored block are found in the blocks before it
+            Block block = getPreviousBlock();
+            while(block != null && block.partialAccounts){
+                account = block.getChangedAccount(address);
+                if(account != null){
+                    return account;
+                }
+                block = block.getPreviousBlock();
+            }
+            return block == null ? null : block.getAccount(address);
+        }
+
         return this.accountBalanceMap.get(address);
     }
 
+    /**
+     * Get Account of the block for changing its balance.
+     * While the block is open, an account still shared with the previous block
+     * is copied on first access so that the previous block is never modified
+     * @param address
+     * @return
+     */
+    public synchronized Account getAccountForUpdate(String address){
+        Account account = this.changedAccountMap.get(address);
+        if(account != null || partialAccounts){
+            return account != null ? account : getAccount(address);
+        }
+
+        account = this.accountBalanceMap.get(address);
+        if(account != null && copyOnWrite){
+            account = (Account) account.clone();
+            addAccount(address, account);
+        }
+        return account;
+    }
+
+    /**
+     * Share account state of the previous block instead of copying it.
+     * Accounts are copied lazily by getAccount until commitAccounts is called
+     * @param block
+     */
+    public void inheritAccounts(Block block){
+        this.accountBalanceMap = block.accountBalanceMap;
+        this.changedAccountMap.clear();
+        this.copyOnWrite = true;
+    }
+
+    /**
+     * Stop copying shared accounts once the block is committed
+     */
+    public void commitAccounts(){
+        this.copyOnWrite = false;
+    }
+
+    /**
+     * Get Accounts created or modified in this block
+     * @return
+     */
+    public Collection<Account> getChangedAccounts(){
+        return this.changedAccountMap.values();
+    }
+
+    /**
+     * Get Account created or modified in this block
+     * @param address
+     * @return Account or Null
+     */
+    synchronized Account getChangedAccount(String address){
+        return this.changedAccountMap.get(address);
+    }
+
+    /**
+     * Restore size and opening time of a decoded block
+     * @param byteSize
+     * @param openedAt
+     */
+    synchronized void restoreSize(long byteSize, long openedAt){
+        this.byteSize = byteSize;
+        this.openedAt = openedAt;
+    }
+
+    /**
+     * Restore transactions of a block loaded from the store
+     * @param transactions
+     * @param blockLoader loader resolving the previous blocks
+     */
+    synchronized void restore(List<Transaction> transactions, BlockLoader blockLoader){
+        for (Transaction transaction : transactions) {
+            this.transactionPositions.put(transaction.getTransactionId(), this.transactionList.size());
+            this.transactionList.add(transaction);
+        }
+        this.blockLoader = blockLoader;
+        this.partialAccounts = true;
+    }
+
+    /**
+     * Resolve accounts not changed by a loaded block through the account history
+     * @param accountHistory history covering the block
+     */
+    void setAccountHistory(AccountHistory accountHistory) {
+        this.accountHistory = accountHistory;
+    }
+
+    /**
+     * Get Transaction from the Block given transaction id
+     * @param transactionId
+     * @return Transaction or Null
+     */
+    public synchronized Transaction getTransaction(String transactionId){
+        Integer position = this.transactionPositions.get(transactionId);
+        return position == null ? null : this.transactionList.get(position);
+    }
+
     /**
      * Getter method for previous block
      * @return
      */
     public Block getPreviousBlock() {
-        return previousBlock;
+        Block block = previousBlock;
+        BlockLoader loader = blockLoader;
+        if (block == null && loader != null && blockNumber > 1) {
+            block = loader.loadBlock(blockNumber - 1);
+        }
+        return block;
     }
 
     /**
@@ -128,4 +347,14 @@ public class Block {
     public void setPreviousBlock(Block previousBlock) {
         this.previousBlock = previousBlock;
     }
+
+    /**
+     * Drop reference to the previous block once it has been stored, so that it can be
+     * reclaimed. The previous block is loaded when asked for
+     * @param blockLoader
+     */
+    void releasePreviousBlock(BlockLoader blockLoader) {
+        this.blockLoader = blockLoader;
+        this.previousBlock = null;
+    }
 }
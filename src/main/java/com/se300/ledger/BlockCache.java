@@ -0,0 +1,157 @@
+package com.se300.ledger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BlockCache class implementation keeping recently used committed blocks in front of a BlockLoader.
+ * Capacity is set in bytes and blocks are weighed by an estimate of their heap size, a fixed cost
+ * per block, transaction and account plus the characters of transaction ids and notes. The least
+ * recently used blocks are evicted once the capacity is exceeded. Blocks loaded through the cache
+ * resolve their previous blocks through it as well, so walking back along the chain is served
+ * from memory while the memory held stays bounded.
+ */
+public class BlockCache implements BlockLoader {
+
+    // Estimated heap cost of a block and of every transaction and account it holds
+    static final long BLOCK_OVERHEAD = 256;
+    static final long TRANSACTION_OVERHEAD = 160;
+    static final long ACCOUNT_OVERHEAD = 96;
+
+    private final long capacity;
+    private final BlockLoader loader;
+
+    // Blocks in access order, guarded by this
+    private final LinkedHashMap<Integer,Block> blocks = new LinkedHashMap<>(64, 0.75f, true);
+    private long size;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * BlockCache Constructor
+     * @param capacity maximum weight of the cached blocks in bytes
+     * @param loader loader of blocks missing from the cache
+     */
+    public BlockCache(long capacity, BlockLoader loader) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid Block Cache Capacity");
+        }
+        this.capacity = capacity;
+        this.loader = loader;
+    }
+
+    /**
+     * Get cached block or load it and add it to the cache
+     * @param blockNumber
+     * @return Block or Null if the loader does not have the block
+     */
+    @Override
+    public Block loadBlock(int blockNumber) {
+        synchronized (this) {
+            Block block = blocks.get(blockNumber);
+            if (block != null) {
+                hits.increment();
+                return block;
+            }
+        }
+
+        misses.increment();
+        Block block = loader.loadBlock(blockNumber);
+        if (block == null) {
+            return null;
+        }
+        block.releasePreviousBlock(this);
+
+        synchronized (this) {
+            //Another thread may have loaded the block in the meantime
+            Block cached = blocks.putIfAbsent(blockNumber, block);
+            if (cached != null) {
+                return cached;
+            }
+            size += weigh(block);
+            Iterator<Map.Entry<Integer,Block>> eldest = blocks.entrySet().iterator();
+            while (size > capacity && eldest.hasNext()) {
+                size -= weigh(eldest.next().getValue());
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Estimate heap size of the block
+     * @param block
+     * @return long representing size in bytes
+     */
+    static long weigh(Block block) {
+        long weight = BLOCK_OVERHEAD + ACCOUNT_OVERHEAD * block.getChangedAccounts().size();
+        for (Transaction transaction : block.getTransactionList()) {
+            weight += TRANSACTION_OVERHEAD + 2L * transaction.getTransactionId().length();
+            if (transaction.getNote() != null) {
+                weight += 2L * transaction.getNote().length();
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Getter method for the capacity in bytes
+     * @return
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get estimated size of the cached blocks in bytes
+     * @return
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Get number of cached blocks
+     * @return
+     */
+    public synchronized int getBlockCount() {
+        return blocks.size();
+    }
+
+    /**
+     * Get number of lookups served from the cache
+     * @return
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get number of lookups passed to the loader
+     * @return
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get number of blocks evicted to stay within the capacity
+     * @return
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Drop every cached block
+     */
+    public synchronized void clear() {
+        blocks.clear();
+        size = 0;
+    }
+}
@@ -0,0 +1,15 @@
+package com.se300.ledger;
+
+/**
+ * BlockListener interface notified of every block committed by a Ledger, such as to replicate it.
+ * Listeners are called by the committing thread while the commit lock is held, in block number
+ * order, so they have to return quickly and hand any further work to another thread
+ */
+public interface BlockListener {
+
+    /**
+     * Called once the block has been hashed and is visible to readers
+     * @param block
+     */
+    void blockCommitted(Block block);
+}
@@ -0,0 +1,15 @@
+package com.se300.ledger;
+
+/**
+ * BlockLoader interface materializing committed blocks that are no longer held in memory,
+ * such as from a block store on disk
+ */
+public interface BlockLoader {
+
+    /**
+     * Load committed block
+     * @param blockNumber
+     * @return Block or Null if the block is not available
+     */
+    Block loadBlock(int blockNumber);
+}
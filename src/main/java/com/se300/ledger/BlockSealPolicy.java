@@ -0,0 +1,135 @@
+package com.se300.ledger;
+
+/**
+ * BlockSealPolicy class implementation deciding when the uncommitted block is sealed.
+ * A block is sealed once it holds the maximum number of transactions, once it reaches the
+ * maximum encoded size or once its first transaction is older than the maximum age.
+ * Size and age limits are disabled when set to 0. Subclasses may override any of the checks
+ */
+public class BlockSealPolicy {
+
+    // Original behaviour of sealing every 10 transactions
+    public static final BlockSealPolicy DEFAULT = new BlockSealPolicy(10, 0, 0);
+
+    private final int maxTransactions;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+
+    /**
+     * BlockSealPolicy Constructor
+     * @param maxTransactions
+     * @param maxBytes 0 for no size limit
+     * @param maxAgeMillis 0 for no age limit
+     * @throws IllegalArgumentException
+     */
+    public BlockSealPolicy(int maxTransactions, long maxBytes, long maxAgeMillis) {
+        if (maxTransactions < 1 || maxBytes < 0 || maxAgeMillis < 0) {
+            throw new IllegalArgumentException("Invalid Block Seal Policy");
+        }
+        this.maxTransactions = maxTransactions;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Getter method for maximum number of transactions in a block
+     * @return
+     */
+    public int getMaxTransactions() {
+        return maxTransactions;
+    }
+
+    /**
+     * Getter method for maximum serialized size of a block
+     * @return
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Getter method for maximum age of the first transaction in an uncommitted block
+     * @return
+     */
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * Size of the transaction counted against the size limit, as encoded by LedgerCodec
+     * @param transaction
+     * @return int representing number of bytes or 0 if there is no size limit
+     */
+    public int sizeOf(Transaction transaction) {
+        return maxBytes == 0 ? 0 : LedgerCodec.sizeOf(transaction);
+    }
+
+    /**
+     * Check whether the transaction still fits into the block
+     * @param block
+     * @param size serialized size of the transaction
+     * @return true if the transaction can be added
+     */
+    public boolean canAppend(Block block, int size) {
+        int count = block.getTransactionList().size();
+        if (count >= maxTransactions) {
+            return false;
+        }
+        return maxBytes == 0 || count == 0 || block.getByteSize() + size <= maxBytes;
+    }
+
+    /**
+     * Check whether the block has to be sealed right away
+     * @param block
+     * @return
+     */
+    public boolean isFull(Block block) {
+        return block.getTransactionList().size() >= maxTransactions
+                || (maxBytes > 0 && block.getByteSize() >= maxBytes);
+    }
+
+    /**
+     * Check whether the transactions already in the block are within the limits of this policy
+     * @param block
+     * @return
+     */
+    public boolean canHold(Block block) {
+        int count = block.getTransactionList().size();
+        return count <= maxTransactions && (maxBytes == 0 || count <= 1 || block.getByteSize() <= maxBytes);
+    }
+
+    /**
+     * Check whether the block has been open for too long
+     * @param block
+     * @param now current time in milliseconds
+     * @return
+     */
+    public boolean isExpired(Block block, long now) {
+        return maxAgeMillis > 0 && !block.getTransactionList().isEmpty()
+                && now - block.getOpenedAt() >= maxAgeMillis;
+    }
+
+    /**
+     * Check transaction count of a block sealed under this policy. Blocks sealed by size or
+     * age may hold fewer transactions than the maximum
+     * @param block
+     * @return
+     */
+    public boolean isValidTransactionCount(Block block) {
+        int count = block.getTransactionList().size();
+        if (count == maxTransactions) {
+            return true;
+        }
+        return count > 0 && count < maxTransactions && (maxBytes > 0 || maxAgeMillis > 0);
+    }
+
+    /**
+     * Check serialized size of a block sealed under this policy. A single transaction
+     * larger than the limit is sealed in a block of its own
+     * @param block
+     * @return
+     */
+    public boolean isValidByteSize(Block block) {
+        return maxBytes == 0 || block.getTransactionList().size() == 1 || block.getByteSize() <= maxBytes;
+    }
+}
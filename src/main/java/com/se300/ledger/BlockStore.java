@@ -0,0 +1,243 @@
+package com.se300.ledger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BlockStore class implementation keeping committed blocks in fixed size memory mapped segment files.
+ * Blocks are appended in block number order, each record framed by LedgerCodec and holding the block
+ * header, transactions and the accounts changed by the block. An offset index rebuilt on
+ * open maps every block number to its record, so blocks are materialized only when asked for.
+ * Accounts not changed by a stored block are resolved through the blocks before it. A failed append
+ * leaves the store failed, every later append fails with the same error. Once closed, the store no
+ * longer returns blocks, also not to blocks loaded from it before.
+ */
+public class BlockStore implements BlockLoader, AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int HEADER_SIZE = LedgerCodec.HEADER_SIZE;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final LedgerCodec codec = new LedgerCodec(4096);
+
+    // Segment index in the upper and record offset in the lower half, indexed by block number - 1
+    private long[] offsets = new long[64];
+    private volatile int lastBlockNumber;
+    private int writePosition;
+    // Set once closed, guarded by this
+    private boolean closed;
+
+    // First append failure, every later append fails with it
+    private volatile IOException failure;
+
+    /**
+     * BlockStore Constructor opening segments in the directory and indexing the stored blocks
+     * @param directory
+     * @param segmentSize size of every segment file in bytes
+     * @throws IOException
+     */
+    public BlockStore(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Invalid Segment Size");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+
+        for (int index = 0; Files.exists(getSegmentPath(index)); index++) {
+            segments.add(map(getSegmentPath(index), Files.size(getSegmentPath(index))));
+            writePosition = indexSegment(index);
+        }
+    }
+
+    /**
+     * Getter method for the segment directory
+     * @return
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get number of the last stored block
+     * @return int representing block number or 0 if the store is empty
+     */
+    public int getLastBlockNumber() {
+        return lastBlockNumber;
+    }
+
+    /**
+     * Get number of segment files
+     * @return
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Check whether an append has failed. The store rejects every append afterwards
+     * @return
+     */
+    public boolean hasFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Append committed block. Blocks have to be appended in block number order
+     * @param block
+     * @throws IOException if the block cannot be written or an earlier append has failed
+     */
+    public synchronized void append(Block block) throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw new IOException("Block Store Has Failed", e);
+        }
+        if (closed) {
+            failure = new IOException("Block Store Is Closed");
+            throw failure;
+        }
+        if (block.getBlockNumber() != lastBlockNumber + 1) {
+            throw new IllegalArgumentException("Block " + block.getBlockNumber() + " Is Out Of Order");
+        }
+
+        ByteBuffer buffer = codec.startRecord().putBlock(block).finishRecord();
+
+        //Start a new segment when the record does not fit, leaving room for the end marker
+        int recordSize = buffer.remaining();
+        if (segments.isEmpty() || writePosition + recordSize + 4 > segments.get(segments.size() - 1).capacity()) {
+            int index = segments.size();
+            try {
+                segments.add(map(getSegmentPath(index), Math.max(segmentSize, recordSize + 4)));
+            } catch (IOException mapFailure) {
+                failure = mapFailure;
+                throw mapFailure;
+            }
+            writePosition = 0;
+        }
+
+        int segment = segments.size() - 1;
+        MappedByteBuffer mapping = segments.get(segment);
+        mapping.put(writePosition, buffer, 0, recordSize);
+
+        int blockNumber = block.getBlockNumber();
+        if (blockNumber > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[blockNumber - 1] = ((long) segment << 32) | writePosition;
+        writePosition += recordSize;
+        lastBlockNumber = blockNumber;
+    }
+
+    /**
+     * Materialize stored block. Accounts the block has not changed are resolved through the
+     * blocks before it, loaded from the store on demand
+     * @param blockNumber
+     * @return Block or Null if the block is not stored or the store has been closed
+     */
+    public Block readBlock(int blockNumber) {
+        ByteBuffer record;
+        synchronized (this) {
+            if (closed || blockNumber < 1 || blockNumber > lastBlockNumber) {
+                return null;
+            }
+            long offset = offsets[blockNumber - 1];
+            record = segments.get((int) (offset >>> 32)).duplicate();
+            record.position((int) offset);
+        }
+
+        int length = record.getInt();
+        int checksum = record.getInt();
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        if (!LedgerCodec.isIntact(bytes, checksum)) {
+            throw new IllegalStateException("Block " + blockNumber + " Is Corrupt");
+        }
+        ByteBuffer payload = ByteBuffer.wrap(bytes);
+        LedgerCodec.checkVersion(payload);
+        return LedgerCodec.getBlock(payload, this);
+    }
+
+    /**
+     * Load stored block, same as readBlock
+     * @param blockNumber
+     * @return Block or Null if the block is not stored
+     */
+    @Override
+    public Block loadBlock(int blockNumber) {
+        return readBlock(blockNumber);
+    }
+
+    /**
+     * Flush mapped segments to disk
+     */
+    public synchronized void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Flush mapped segments, the mappings are released once no longer referenced.
+     * Blocks loading their predecessors from the store find them missing from now on
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        force();
+        segments.clear();
+        closed = true;
+    }
+
+    private int indexSegment(int segment) {
+        MappedByteBuffer mapping = segments.get(segment);
+        int position = 0;
+        while (position + HEADER_SIZE <= mapping.capacity()) {
+            int length = mapping.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > mapping.capacity()) {
+                break;
+            }
+            //Torn record left by a crash ends the store
+            byte[] bytes = new byte[length];
+            mapping.get(position + HEADER_SIZE, bytes);
+            if (!LedgerCodec.isIntact(bytes, mapping.getInt(position + 4))) {
+                break;
+            }
+            //Block number follows the codec version
+            int blockNumber = mapping.getInt(position + HEADER_SIZE + 1);
+            if (blockNumber != lastBlockNumber + 1) {
+                break;
+            }
+            if (blockNumber > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[blockNumber - 1] = ((long) segment << 32) | position;
+            lastBlockNumber = blockNumber;
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private Path getSegmentPath(int index) {
+        return directory.resolve(String.format("segment-%05d.dat", index));
+    }
+
+    private static MappedByteBuffer map(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
@@ -1,7 +1,25 @@
 package com.se300.ledger;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import static java.util.Map.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
 
 /**
  * Ledger Class representing simple implementation of Blockchain
@@ -14,20 +32,67 @@ public class Ledger {
     private String name;
     private String description;
     private String seed;
-    private static NavigableMap <Integer,Block> blockMap;
-    private static Block uncommittedBlock;
+    private NavigableMap <Integer,Block> blockMap;
+    private volatile Block uncommittedBlock;
+    private Map<String,Integer> transactionIndex;
+    // Committed balances of every account as of every block
+    private volatile AccountHistory accountHistory;
+    // Committed state read without locking, replaced on every block commit
+    private volatile LedgerSnapshot snapshot;
+    private long committedFees;
+    private volatile int validatedThrough;
+    private volatile int lastCommittedBlock;
+    // Last block covered by the snapshot the ledger has been restored from
+    private volatile int restoredThrough;
 
+    // Default Ledger shared through getInstance
     private static Ledger ledger;
 
-    // Initialize genesis block and the account list
-    static {
-        blockMap = new TreeMap<>();
-        uncommittedBlock = new Block(1, "");
-        uncommittedBlock.addAccount("master", new Account("master", Integer.MAX_VALUE));
-    }
+    // Block number recorded for transaction ids that are reserved but not yet applied
+    private static final int PENDING_BLOCK = 0;
+    private static final int LOCK_STRIPES = 64;
+
+    // Transfers share the commit lock, committing a block takes it exclusively
+    private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] accountLocks = new ReentrantLock[LOCK_STRIPES];
+
+    // Policy deciding when the uncommitted block is sealed
+    private volatile BlockSealPolicy sealPolicy = BlockSealPolicy.DEFAULT;
+    private ScheduledExecutorService sealTimer;
+    private ScheduledFuture<?> sealTimerTask;
+
+    // Leaves of block Merkle trees, LEGACY hashes transaction strings, BINARY their LedgerCodec encoding
+    private volatile MerkleTrees.Mode merkleMode = MerkleTrees.Mode.LEGACY;
+
+    // Background sealing, null when blocks are hashed on the submitting thread
+    private volatile ExecutorService sealer;
+    private final Map<Integer,Block> sealingBlocks = new ConcurrentHashMap<>();
+
+    // Log of accepted operations, null when the ledger is kept in memory only
+    private volatile WriteAheadLog writeAheadLog;
+
+    // Periodic snapshots, written by a background thread every snapshotInterval blocks
+    private volatile Path snapshotDirectory;
+    private int snapshotInterval;
+    private ExecutorService snapshotWriter;
+    // Serializes writers of snapshot and transaction files
+    private final Object snapshotMonitor = new Object();
+
+    // Store of committed blocks, null when every committed block is kept in memory
+    private volatile BlockStore blockStore;
+    private int residentBlocks;
+
+    // Recently used stored blocks, null when every lookup goes to the block store
+    private volatile BlockCache blockCache;
+
+    // Notified of every committed block, kept across resets
+    private final List<BlockListener> blockListeners = new CopyOnWriteArrayList<>();
+
+    // Streams committed blocks and transactions to subscribers, created on first use
+    private volatile LedgerPublisher publisher;
 
     /**
-     * Create singleton of the Ledger
+     * Create default singleton of the Ledger. Independent ledgers are created through a LedgerRegistry
      * @param name
      * @param description
      * @param seed
@@ -41,15 +106,27 @@ public class Ledger {
     }
 
     /**
-     * Private Ledger Constructor
+     * Ledger Constructor, used by getInstance and LedgerRegistry
      * @param name
      * @param description
      * @param seed
      */
-    private Ledger(String name, String description, String seed) {
+    Ledger(String name, String description, String seed) {
         this.name = name;
         this.description = description;
         this.seed = seed;
+
+        // Initialize genesis block and the account list
+        blockMap = new ConcurrentSkipListMap<>();
+        uncommittedBlock = new Block(1, "");
+        uncommittedBlock.addAccount("master", new Account("master", Integer.MAX_VALUE));
+        transactionIndex = new ConcurrentHashMap<>();
+        accountHistory = new AccountHistory();
+        snapshot = LedgerSnapshot.EMPTY;
+
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            accountLocks[i] = new ReentrantLock();
+        }
     }
 
     /**
@@ -107,24 +184,251 @@ public class Ledger {
      */
     public Account createAccount(String address) throws LedgerException {
 
-        if(uncommittedBlock.getAccount(address) != null){
-            throw new LedgerException("Create Account", "Account Already Exists");
+        Account tempAccount;
+        commitLock.readLock().lock();
+        try {
+            Block block = uncommittedBlock;
+            synchronized (block) {
+                if(block.getAccount(address) != null){
+                    throw new LedgerException("Create Account", "Account Already Exists");
+                }
+
+                logCreateAccount(address);
+                Account account = new Account(address, 0);
+                block.addAccount(address, account);
+                tempAccount = account;
+            }
+        } finally {
+            commitLock.readLock().unlock();
         }
 
-        Account account = new Account(address, 0);
-        uncommittedBlock.addAccount(address, account);
-        return account;
+        awaitDurable("Create Account");
+        return tempAccount;
+    }
+
+    /**
+     * Method implementing core functionality of the Blockchain by handling given transaction.
+     * Transfers only lock the payer and receiver accounts, so transfers between different
+     * accounts run in parallel. Committing a full block is the only step that excludes all others
+     * @param transaction
+     * @return String representing transaction id
+     * @throws LedgerException
+     */
+    public String processTransaction(Transaction transaction) throws LedgerException {
+
+        checkTransaction(transaction);
+        return submitTransaction(transaction);
+    }
+
+    /**
+     * Process leg of a protocol moving funds between ledgers, such as a cross-shard transfer.
+     * The fee is charged once by the leg debiting the payer, the other legs carry no fee
+     * @param transaction
+     * @return String representing transaction id
+     * @throws LedgerException
+     */
+    String processTransferLeg(Transaction transaction) throws LedgerException {
+
+        if(transaction.getFee() != 0){
+            checkTransaction(transaction);
+        } else if(transaction.getAmount() < 0){
+            throw new LedgerException("Process Transaction", "Transaction Amount Is Out of Range");
+        }
+        return submitTransaction(transaction);
     }
 
     /**
-     * Method implementing core functionality of the Blockchain by handling given transaction
+     * Reserve id of the checked transaction, apply it and commit the block it fills
      * @param transaction
      * @return String representing transaction id
      * @throws LedgerException
      */
-    public synchronized String processTransaction(Transaction transaction) throws LedgerException {
+    private String submitTransaction(Transaction transaction) throws LedgerException {
+
+        checkBlockStore("Process Transaction");
+
+        //Reserve transaction id so that concurrent duplicates are rejected as well
+        if(transactionIndex.putIfAbsent(transaction.getTransactionId(), PENDING_BLOCK) != null){
+            throw new LedgerException("Process Transaction", "Transaction Id Must Be Unique");
+        }
+
+        Block fullBlock;
+        try {
+            fullBlock = applyTransaction(transaction);
+        } catch (LedgerException e) {
+            transactionIndex.remove(transaction.getTransactionId());
+            throw e;
+        }
+
+        //Check to see if account blocked has reached max size
+        if (fullBlock != null){
+            try {
+                commitBlock(fullBlock, "Process Transaction");
+            } catch (LedgerException e) {
+                throw new LedgerException("Process Transaction", "Applied But Not Durable");
+            }
+        }
+
+        awaitDurable("Process Transaction");
+        return transaction.getTransactionId();
+    }
+
+    /**
+     * Apply transaction to the uncommitted block while holding only the payer and receiver locks
+     * @param transaction
+     * @return Block that has been filled by this transaction or Null
+     * @throws LedgerException
+     */
+    private Block applyTransaction(Transaction transaction) throws LedgerException {
+
+        //Lock stripes in a fixed order to avoid deadlocks between opposite transfers
+        int payerStripe = lockStripe(transaction.getPayer());
+        int receiverStripe = lockStripe(transaction.getReceiver());
+        ReentrantLock firstLock = accountLocks[Math.min(payerStripe, receiverStripe)];
+        ReentrantLock secondLock = accountLocks[Math.max(payerStripe, receiverStripe)];
+
+        while (true) {
+            Block fullBlock = null;
+
+            commitLock.readLock().lock();
+            firstLock.lock();
+            secondLock.lock();
+            try {
+                Block block = uncommittedBlock;
+
+                Account tempPayerAccount = bindAccount(block, transaction.getPayer());
+                if(tempPayerAccount.getBalance() < (transaction.getAmount() + transaction.getFee()))
+                    throw new LedgerException("Process Transaction", "Payer Does Not Have Required Funds");
+
+                //Make sure accounts belong to the block the transaction is applied to
+                transaction.setPayer(bindAccountForUpdate(block, transaction.getPayer()));
+                transaction.setReceiver(bindAccountForUpdate(block, transaction.getReceiver()));
+
+                BlockSealPolicy policy = policyOf(block);
+                if (appendTransaction(block, transaction, policy)) {
+                    return policy.isFull(block) ? block : null;
+                }
+                fullBlock = block;
+            } finally {
+                secondLock.unlock();
+                firstLock.unlock();
+                commitLock.readLock().unlock();
+            }
+
+            //Block filled up by concurrent transfers, commit it and retry on the next one
+            commitBlock(fullBlock, "Process Transaction");
+        }
+    }
+
+    /**
+     * Method handling a batch of transactions. The whole batch is checked in one pass, including
+     * duplicate ids within the batch, and then applied while holding the commit lock once,
+     * committing as many blocks as the batch fills
+     * @param transactions
+     * @return List of TransactionResult in the order of given transactions
+     */
+    public List<TransactionResult> processTransactions(List<Transaction> transactions) {
+
+        LedgerException[] exceptions = new LedgerException[transactions.size()];
+        Set<String> batchIds = new HashSet<>();
+
+        //Check specification conditions and uniqueness of the whole batch
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            try {
+                checkBlockStore("Process Transaction");
+                checkTransaction(transaction);
+                if(!batchIds.add(transaction.getTransactionId())
+                        || transactionIndex.containsKey(transaction.getTransactionId())){
+                    throw new LedgerException("Process Transaction", "Transaction Id Must Be Unique");
+                }
+            } catch (LedgerException e) {
+                exceptions[i] = e;
+            }
+        }
+
+        commitLock.writeLock().lock();
+        try {
+            for (int i = 0; i < transactions.size(); i++) {
+                if (exceptions[i] != null) {
+                    continue;
+                }
+                Transaction transaction = transactions.get(i);
+                try {
+                    //Concurrent single submissions might have taken the id in the meantime
+                    if(transactionIndex.putIfAbsent(transaction.getTransactionId(), PENDING_BLOCK) != null){
+                        throw new LedgerException("Process Transaction", "Transaction Id Must Be Unique");
+                    }
+
+                    Block block = uncommittedBlock;
+                    BlockSealPolicy policy = policyOf(block);
+                    while (true) {
+                        //Seal the block first if the transaction does not fit into it
+                        if (!policy.canAppend(block, policy.sizeOf(transaction))) {
+                            try {
+                                commitBlock(block, "Process Transaction");
+                            } catch (LedgerException e) {
+                                transactionIndex.remove(transaction.getTransactionId());
+                                throw e;
+                            }
+                            //Next block is filled under its own policy
+                            block = uncommittedBlock;
+                            policy = policyOf(block);
+                            continue;
+                        }
+
+                        if(bindAccount(block, transaction.getPayer()).getBalance()
+                                < (transaction.getAmount() + transaction.getFee())){
+                            transactionIndex.remove(transaction.getTransactionId());
+                            throw new LedgerException("Process Transaction", "Payer Does Not Have Required Funds");
+                        }
+                        transaction.setPayer(bindAccountForUpdate(block, transaction.getPayer()));
+                        transaction.setReceiver(bindAccountForUpdate(block, transaction.getReceiver()));
 
-        //Check for transaction specification conditions
+                        if (appendTransaction(block, transaction, policy)) {
+                            break;
+                        }
+                    }
+
+                    if (policy.isFull(block)) {
+                        try {
+                            commitBlock(block, "Process Transaction");
+                        } catch (LedgerException e) {
+                            throw new LedgerException("Process Transaction", "Applied But Not Durable");
+                        }
+                    }
+                } catch (LedgerException e) {
+                    exceptions[i] = e;
+                }
+            }
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+
+        //One log commit covers the whole batch
+        try {
+            awaitDurable("Process Transaction");
+        } catch (LedgerException e) {
+            for (int i = 0; i < transactions.size(); i++) {
+                if (exceptions[i] == null) {
+                    exceptions[i] = e;
+                }
+            }
+        }
+
+        List<TransactionResult> results = new ArrayList<>(transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            results.add(new TransactionResult(transactions.get(i).getTransactionId(), exceptions[i]));
+        }
+        return results;
+    }
+
+    /**
+     * Check transaction specification conditions
+     * @param transaction
+     * @throws LedgerException
+     */
+    private void checkTransaction(Transaction transaction) throws LedgerException {
         if(transaction.getAmount() < 0 || transaction.getAmount() > Integer.MAX_VALUE ){
             throw new LedgerException("Process Transaction", "Transaction Amount Is Out of Range");
         } else if (transaction.getFee() < 10) {
@@ -132,224 +436,1516 @@ public class Ledger {
         } else if (transaction.getNote().length() > 1024){
             throw new LedgerException("Process Transaction", "Note Length Must Be Less Than 1024 Chars");
         }
+    }
 
-        if(ledger.getTransaction(transaction.getTransactionId()) != null){
-            throw new LedgerException("Process Transaction", "Transaction Id Must Be Unique");
-        }
-
+    /**
+     * Add transaction to the block and move the funds, unless the transaction does not fit
+     * into the block under the given policy
+     * @param block
+     * @param transaction
+     * @param policy
+     * @return true if the transaction has been added
+     * @throws LedgerException
+     */
+    private boolean appendTransaction(Block block, Transaction transaction, BlockSealPolicy policy)
+            throws LedgerException {
         Account tempPayerAccount = transaction.getPayer();
         Account tempReceiverAccount = transaction.getReceiver();
+        int size = policy.sizeOf(transaction);
 
-        if(transaction.getPayer().getBalance() < (transaction.getAmount() + transaction.getFee()))
-            throw new LedgerException("Process Transaction", "Payer Does Not Have Required Funds");
+        synchronized (block) {
+            if (!policy.canAppend(block, size)) {
+                return false;
+            }
 
-        //Deduct balance of the payer
-        tempPayerAccount.setBalance(tempPayerAccount.getBalance()
-                - transaction.getAmount() - transaction.getFee());
-        //Increase balance of the receiver
-        tempReceiverAccount.setBalance(tempReceiverAccount.getBalance() + transaction.getAmount());
+            //Logged under the block monitor so that log order matches the order of the block
+            WriteAheadLog log = writeAheadLog;
+            if (log != null) {
+                try {
+                    log.appendTransaction(transaction);
+                } catch (IOException e) {
+                    transactionIndex.remove(transaction.getTransactionId());
+                    throw new LedgerException("Process Transaction", "Write Ahead Log Failed");
+                }
+            }
 
-        uncommittedBlock.getTransactionList().add(transaction);
+            block.addTransaction(transaction, size);
+            transactionIndex.put(transaction.getTransactionId(), block.getBlockNumber());
 
-        //Check to see if account blocked has reached max size
-        if (uncommittedBlock.getTransactionList().size() == 10){
+            //Deduct balance of the payer
+            tempPayerAccount.setBalance(tempPayerAccount.getBalance()
+                    - transaction.getAmount() - transaction.getFee());
+            //Increase balance of the receiver
+            tempReceiverAccount.setBalance(tempReceiverAccount.getBalance() + transaction.getAmount());
+            return true;
+        }
+    }
+
+    /**
+     * Resolve account of the transaction against given block
+     * @param block
+     * @param account
+     * @return Account of the block or given account if the block does not know it
+     */
+    private Account bindAccount(Block block, Account account) {
+        Account blockAccount = block.getAccount(account.getAddress());
+        return blockAccount != null ? blockAccount : account;
+    }
+
+    /**
+     * Resolve account of the transaction against given block for changing its balance
+     * @param block
+     * @param account
+     * @return Account of the block or given account if the block does not know it
+     */
+    private Account bindAccountForUpdate(Block block, Account account) {
+        Account blockAccount = block.getAccountForUpdate(account.getAddress());
+        return blockAccount != null ? blockAccount : account;
+    }
+
+    /**
+     * Get lock stripe of the account
+     * @param account
+     * @return int representing index into account locks
+     */
+    private int lockStripe(Account account) {
+        int hash = Objects.hashCode(account.getAddress());
+        return ((hash ^ (hash >>> 16)) & 0x7fffffff) % LOCK_STRIPES;
+    }
 
-            List<String> tempTxList = new ArrayList<>();
-            tempTxList.add(seed);
+    /**
+     * Record account creation in the write ahead log if there is one
+     * @param address
+     * @throws LedgerException
+     */
+    private void logCreateAccount(String address) throws LedgerException {
+        WriteAheadLog log = writeAheadLog;
+        if (log != null) {
+            try {
+                log.appendCreateAccount(address);
+            } catch (IOException e) {
+                throw new LedgerException("Create Account", "Write Ahead Log Failed");
+            }
+        }
+    }
 
-            //Loop through the list of transaction to get the hash
-            for( Transaction tempTx : uncommittedBlock.getTransactionList()){
-                tempTxList.add(tempTx.toString());
+    /**
+     * Wait until operations logged so far are durable. Called without holding any lock,
+     * so that submitters waiting for the same fsync do not block each other.
+     * The operations have already been applied when the log fails, which is reported as
+     * Applied But Not Durable to every submitter waiting for it
+     * @param action
+     * @throws LedgerException
+     */
+    private void awaitDurable(String action) throws LedgerException {
+        WriteAheadLog log = writeAheadLog;
+        if (log != null) {
+            try {
+                log.commit();
+            } catch (IOException e) {
+                throw new LedgerException(action, "Applied But Not Durable");
             }
+        }
+    }
 
-            MerkleTrees merkleTrees = new MerkleTrees(tempTxList);
-            merkleTrees.merkle_tree();
-            uncommittedBlock.setHash(merkleTrees.getRoot());
+    /**
+     * Check whether the write ahead log has failed. A log failure is fatal: operations applied
+     * before it are reported as Applied But Not Durable, and every later operation is rejected
+     * with Write Ahead Log Failed before it is applied. Restore the Ledger from the log to continue
+     * @return true if a write or fsync of the attached log has failed
+     */
+    public boolean hasWriteAheadLogFailed() {
+        WriteAheadLog log = writeAheadLog;
+        return log != null && log.hasFailed();
+    }
 
-            //Commit uncommitted block
-            blockMap.put(uncommittedBlock.getBlockNumber(), uncommittedBlock);
+    /**
+     * Commit given block and open the next one, unless it has already been committed.
+     * With asynchronous sealing the Merkle root is computed by the sealer thread and
+     * the block is published once hashed, while transactions go to the next block.
+     * The block stays uncommitted if its seal record cannot be logged
+     * @param block
+     * @param action
+     * @throws LedgerException if the write ahead log has failed
+     */
+    private void commitBlock(Block block, String action) throws LedgerException {
 
-            //Get committed block
-            Block committedBlock = blockMap.lastEntry().getValue();
-            Map<String,Account> accountMap = committedBlock.getAccountBalanceMap();
+        commitLock.writeLock().lock();
+        try {
+            if (uncommittedBlock != block) {
+                return;
+            }
 
-            //Get all the accounts
-            List<Account> accountList = new ArrayList<Account>(accountMap.values());
+            BlockSealPolicy policy = policyOf(block);
+            WriteAheadLog log = writeAheadLog;
+            if (log != null) {
+                try {
+                    log.appendSealBlock(block.getBlockNumber(), policy);
+                } catch (IOException e) {
+                    throw new LedgerException(action, "Write Ahead Log Failed");
+                }
+            }
 
-            //Create next block
-            uncommittedBlock = new Block(uncommittedBlock.getBlockNumber() + 1,
-                    committedBlock.getHash());
+            //Stop copying accounts of the block being committed
+            block.commitAccounts();
+            block.setSealPolicy(policy);
 
-            //Replicate accounts
-            for (Account account : accountList) {
-                Account tempAccount = (Account) account.clone();
-                uncommittedBlock.addAccount(tempAccount.getAddress(), tempAccount);
+            ExecutorService executor = sealer;
+            if (executor == null) {
+                publishBlock(block, computeHash(block));
+                openNextBlock(block, block.getHash());
+                return;
             }
 
-            //Link to previous block
-            uncommittedBlock.setPreviousBlock(committedBlock);
+            //Hash of the block is not known yet, it is linked once the block is published
+            sealingBlocks.put(block.getBlockNumber(), block);
+            Block nextBlock = openNextBlock(block, null);
+            executor.execute(() -> {
+                String hash = computeHash(block);
+
+                commitLock.writeLock().lock();
+                try {
+                    publishBlock(block, hash);
+                    nextBlock.setPreviousHash(hash);
+                } finally {
+                    commitLock.writeLock().unlock();
+                }
+            });
+        } finally {
+            commitLock.writeLock().unlock();
         }
+    }
 
-        return transaction.getTransactionId();
+    /**
+     * Compute Merkle root of the block transactions
+     * @param block
+     * @return String representing hash of the block
+     */
+    private String computeHash(Block block) {
+        MerkleTrees merkleTrees = getMerkleTree(block);
+        merkleTrees.merkle_tree();
+        return merkleTrees.getRoot();
     }
 
     /**
-     * Get Account balance by address
-     * @param address
-     * @return Integer representing balance of the Account
-     * @throws LedgerException
+     * Merkle tree of the block with the seed as the first leaf followed by the transactions
+     * @param block
+     * @return
      */
-    public Integer getAccountBalance(String address) throws LedgerException {
+    private MerkleTrees getMerkleTree(Block block) {
 
-        if(blockMap.isEmpty()){
-            throw new LedgerException("Get Account Balance", "Account Is Not Committed to a Block");
+        if (merkleMode == MerkleTrees.Mode.BINARY) {
+            //Leaves are encoded one after another into a buffer owned by the tree
+            List<Transaction> transactions = block.getTransactionList();
+            LedgerCodec codec = new LedgerCodec(64 * (transactions.size() + 1));
+            int[] offsets = new int[transactions.size() + 2];
+            codec.putBytes(seed.getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < transactions.size(); i++) {
+                offsets[i + 1] = codec.getBuffer().position();
+                codec.putByte(LedgerCodec.VERSION).putTransaction(transactions.get(i));
+            }
+            offsets[transactions.size() + 1] = codec.getBuffer().position();
+            return MerkleTrees.ofEncodedLeaves(codec.getBuffer().flip(), offsets);
         }
 
-        Block block = blockMap.lastEntry().getValue();
-        Account account = block.getAccount(address);
+        List<String> tempTxList = new ArrayList<>();
+        tempTxList.add(seed);
 
-        if (account == null)
-            throw new LedgerException("Get Account Balance", "Account Does Not Exist");
-        else
-            return account.getBalance();
+        //Loop through the list of transaction to get the hash
+        for( Transaction tempTx : block.getTransactionList()){
+            tempTxList.add(tempTx.toString());
+        }
+
+        return new MerkleTrees(tempTxList);
     }
 
     /**
-     * Get all Account balances that are part of the Blockchain
-     * @return Map representing Accounts and balances
+     * Make hashed block visible to readers. Requires commit lock to be held exclusively
+     * @param block
+     * @param hash
      */
-    public Map<String,Integer> getAccountBalances(){
+    private void publishBlock(Block block, String hash) {
 
-        if(blockMap.isEmpty())
-            return null;
+        block.setHash(hash);
+        blockMap.put(block.getBlockNumber(), block);
+        sealingBlocks.remove(block.getBlockNumber());
+
+        BlockStore store = blockStore;
+        if (store != null) {
+            try {
+                store.append(block);
+                evictBlocks(store);
+            } catch (IOException e) {
+                //Store stays failed, see hasBlockStoreFailed
+            }
+        }
 
-        Block committedBlock = blockMap.lastEntry().getValue();
-        Map<String,Account> accountMap = committedBlock.getAccountBalanceMap();
+        Path directory = snapshotDirectory;
+        if (directory != null && block.getBlockNumber() % snapshotInterval == 0) {
+            snapshotWriter.execute(() -> writePeriodicSnapshot(directory));
+        }
 
-        Map<String, Integer> balances = new HashMap<>();
-        List<Account> accountList = new ArrayList<>(accountMap.values());
+        for (Transaction transaction : block.getTransactionList()) {
+            committedFees += transaction.getFee();
+        }
 
-        for (Account account : accountList) {
-            balances.put(account.getAddress(), account.getBalance());
+        //Publish balances of the accounts touched by the block
+        AccountHistory history = accountHistory;
+        for (Account account : block.getChangedAccounts()) {
+            if (account.getAddress() != null) {
+                history.record(account.getAddress(), block.getBlockNumber(), account.getBalance());
+            }
         }
+        snapshot = new LedgerSnapshot(block.getBlockNumber(), hash, history, history.getAccountCount(),
+                committedFees);
 
-        return balances;
+        //Readers checking the committed block number find everything above published by now
+        lastCommittedBlock = block.getBlockNumber();
+
+        for (BlockListener listener : blockListeners) {
+            try {
+                listener.blockCommitted(block);
+            } catch (RuntimeException e) {
+                //Failing listener does not fail the commit
+            }
+        }
     }
 
     /**
-     * Get Block by id
+     * Drop stored blocks from memory, keeping only the most recent ones resident.
+     * Requires commit lock to be held exclusively
+     * @param store
+     */
+    private void evictBlocks(BlockStore store) {
+        while (blockMap.size() > residentBlocks && blockMap.firstKey() <= store.getLastBlockNumber()) {
+            blockMap.pollFirstEntry();
+            //Oldest resident block loads its predecessor from the store from now on
+            blockMap.firstEntry().getValue().releasePreviousBlock(getBlockLoader(store));
+        }
+    }
+
+    /**
+     * Find committed block in memory or in the block store
      * @param blockNumber
-     * @return Block or Null
+     * @return Block or Null if the block has not been committed
      */
-    public Block getBlock (Integer blockNumber) throws LedgerException {
+    private Block findBlock(int blockNumber) {
         Block block = blockMap.get(blockNumber);
-        if(block == null){
-            throw new LedgerException("Get Block", "Block Does Not Exist");
+        BlockStore store = blockStore;
+        if (block == null && store != null && blockNumber <= lastCommittedBlock) {
+            block = getBlockLoader(store).loadBlock(blockNumber);
+            AccountHistory history = accountHistory;
+            if (block != null && history.covers(blockNumber)) {
+                block.setAccountHistory(history);
+            }
         }
         return block;
     }
 
     /**
-     * Get Transaction by id
-     * @param transactionId
-     * @return Transaction or Null
+     * Loader of blocks no longer held in memory, the block cache if there is one
+     * @param store
+     * @return BlockLoader
      */
-    public Transaction getTransaction (String transactionId){
+    private BlockLoader getBlockLoader(BlockStore store) {
+        BlockCache cache = blockCache;
+        return cache != null ? cache : store;
+    }
 
-        for ( Entry mapElement : blockMap.entrySet()) {
+    /**
+     * Open the block following the committed one. Requires commit lock to be held exclusively
+     * @param committedBlock
+     * @param previousHash
+     * @return Block that became the uncommitted block
+     */
+    private Block openNextBlock(Block committedBlock, String previousHash) {
 
-            // Finding specific transactions in the committed blocks
-            Block tempBlock = (Block) mapElement.getValue();
-            for (Transaction transaction : tempBlock.getTransactionList()){
-                if(transaction.getTransactionId().equals(transactionId)){
-                    return transaction;
-                }
-            }
-        }
-        // Finding specific transactions in the uncommitted block
-        for (Transaction transaction : uncommittedBlock.getTransactionList()){
-            if(transaction.getTransactionId().equals(transactionId)){
-                return transaction;
-            }
-        }
-        return null;
+        //Create next block
+        Block nextBlock = new Block(committedBlock.getBlockNumber() + 1, previousHash);
+
+        //Share accounts with the committed block, copying them only when modified
+        nextBlock.inheritAccounts(committedBlock);
+
+        //Link to previous block
+        nextBlock.setPreviousBlock(committedBlock);
+
+        //Publish the block only once it is complete, readers do not take the commit lock
+        uncommittedBlock = nextBlock;
+        return nextBlock;
     }
 
     /**
-     * Get number of Blocks in the Blockchain
-     * @return int representing number of blocks committed to Blockchain
+     * Register listener notified of every block committed from now on
+     * @param listener
      */
-    public int getNumberOfBlocks(){
-        return blockMap.size();
+    public void addBlockListener(BlockListener listener) {
+        blockListeners.add(Objects.requireNonNull(listener));
     }
 
     /**
-     * Method for validating Blockchain.
-     * Check each block for Hash consistency
-     * Check each block for Transaction count
-     * Check account balances against the total
+     * Unregister block listener
+     * @param listener
      */
-    public void validate() throws LedgerException {
+    public void removeBlockListener(BlockListener listener) {
+        blockListeners.remove(listener);
+    }
 
-        if(blockMap.isEmpty()){
-            throw new LedgerException("Validate", "No Block Has Been Committed");
+    /**
+     * Get publisher of the committed blocks and transactions, registering it as block listener on first use.
+     * Subscribers are buffered up to Flow.defaultBufferSize items each
+     * @return LedgerPublisher
+     */
+    public LedgerPublisher getPublisher() {
+        LedgerPublisher current = publisher;
+        if (current == null) {
+            commitLock.writeLock().lock();
+            try {
+                if (publisher == null) {
+                    publisher = new LedgerPublisher(Flow.defaultBufferSize());
+                    addBlockListener(publisher);
+                }
+                current = publisher;
+            } finally {
+                commitLock.writeLock().unlock();
+            }
         }
+        return current;
+    }
 
-        Block committedBlock = blockMap.lastEntry().getValue();
-        Map<String,Account> accountMap = committedBlock.getAccountBalanceMap();
-        List<Account> accountList = new ArrayList<>(accountMap.values());
-
-        int totalBalance = 0;
-        for (Account account : accountList) {
-            totalBalance += account.getBalance();
-        }
+    /**
+     * Apply block committed by another Ledger with the same seed, such as a replication leader.
+     * Accounts created by the block are created, its transactions are replayed and the block is
+     * sealed under its own seal policy, after which the resulting hash has to match the hash of the
+     * block. A block failing to apply leaves the Ledger diverged, it has to be reset and caught up
+     * @param block committed block holding the accounts it has changed
+     * @throws LedgerException
+     */
+    public void applyBlock(Block block) throws LedgerException {
 
-        int fees = 0;
-        String hash;
-        for(Integer key : blockMap.keySet()){
-            Block block = blockMap.get(key);
+        commitLock.writeLock().lock();
+        try {
+            if (sealer != null) {
+                throw new LedgerException("Apply Block", "Asynchronous Sealing Is Enabled");
+            }
+            Block currentBlock = uncommittedBlock;
+            if (block.getBlockNumber() != currentBlock.getBlockNumber()) {
+                throw new LedgerException("Apply Block", "Block Is Out Of Order");
+            }
+            if (!currentBlock.getTransactionList().isEmpty()) {
+                throw new LedgerException("Apply Block", "Uncommitted Block Holds Transactions");
+            }
 
-            //Check for Hash Consistency
-            if(block.getBlockNumber() != 1)
-                if(!block.getPreviousHash().equals(block.getPreviousBlock().getHash())){
-                    throw new LedgerException("Validate", "Hash Is Inconsistent: "
-                            + block.getBlockNumber());
+            for (Account account : block.getChangedAccounts()) {
+                if (currentBlock.getAccount(account.getAddress()) == null) {
+                    createAccount(account.getAddress());
+                }
+            }
+            for (Transaction transaction : block.getTransactionList()) {
+                replayTransaction(new Transaction(transaction.getTransactionId(), transaction.getAmount(),
+                        transaction.getFee(), transaction.getNote(),
+                        new Account(transaction.getPayer().getAddress(), 0),
+                        new Account(transaction.getReceiver().getAddress(), 0)));
             }
 
-            //Check for Transaction Count
-            if(block.getTransactionList().size() != 10){
-                throw new LedgerException("Validate", "Transaction Count Is Not 10 In Block: "
-                        + block.getBlockNumber());
+            //Seal under the policy of the block so that validation checks the block against it
+            if (block.getSealPolicy() != null) {
+                currentBlock.setSealPolicy(block.getSealPolicy());
             }
+            commitBlock(currentBlock, "Apply Block");
 
-            for(Transaction transaction : block.getTransactionList()){
-                fees += transaction.getFee();
+            if (!Objects.equals(currentBlock.getHash(), block.getHash())) {
+                throw new LedgerException("Apply Block", "Block Hash Does Not Match");
             }
+        } finally {
+            commitLock.writeLock().unlock();
         }
+    }
 
-        int adjustedBalance = totalBalance + fees;
+    /**
+     * Getter method for the Merkle tree leaf encoding of block hashes
+     * @return
+     */
+    public MerkleTrees.Mode getMerkleMode() {
+        return merkleMode;
+    }
 
-        //Check for account balances against the total
-        if(adjustedBalance != Integer.MAX_VALUE){
-            throw new LedgerException("Validate", "Balance Does Not Add Up");
+    /**
+     * Setter method for the Merkle tree leaf encoding of block hashes. BINARY hashes the LedgerCodec
+     * encoding of every transaction instead of its string form. The encoding is part of every block
+     * hash, so it can only be changed before the first transaction and is kept by reset
+     * @param mode
+     * @throws LedgerException if the ledger already holds transactions
+     */
+    public void setMerkleMode(MerkleTrees.Mode mode) throws LedgerException {
+
+        commitLock.writeLock().lock();
+        try {
+            if (lastCommittedBlock > 0 || !sealingBlocks.isEmpty()
+                    || !uncommittedBlock.getTransactionList().isEmpty()) {
+                throw new LedgerException("Set Merkle Mode", "Ledger Already Holds Transactions");
+            }
+            merkleMode = Objects.requireNonNull(mode);
+        } finally {
+            commitLock.writeLock().unlock();
         }
+    }
 
+    /**
+     * Get policy the uncommitted block is filled and sealed under
+     * @param block
+     * @return BlockSealPolicy kept by the block or the policy of the ledger
+     */
+    private BlockSealPolicy policyOf(Block block) {
+        BlockSealPolicy policy = block.getSealPolicy();
+        return policy != null ? policy : sealPolicy;
     }
 
     /**
-     * Helper method for CommandProcessor
-     * @return current block we are working with
+     * Getter method for the block seal policy
+     * @return
      */
-    public Block getUncommittedBlock(){
-        return uncommittedBlock;
+    public BlockSealPolicy getBlockSealPolicy() {
+        return sealPolicy;
     }
 
     /**
-     * Helper method allowing reset the state of the Ledger
+     * Setter method for the block seal policy. Policies with a maximum age are enforced by a
+     * timer thread sealing the uncommitted block once its first transaction gets too old.
+     * An uncommitted block already holding more than the new policy allows is filled and sealed
+     * under the policy it has been filled under, the new policy applies from the next block
+     * @param policy
      */
-    public synchronized void reset(){
-        blockMap = new TreeMap<>();
-        uncommittedBlock = new Block(1, "");
-        uncommittedBlock.addAccount("master", new Account("master", Integer.MAX_VALUE));
+    public void setBlockSealPolicy(BlockSealPolicy policy) {
+
+        commitLock.writeLock().lock();
+        try {
+            Block pendingBlock = uncommittedBlock;
+            pendingBlock.setSealPolicy(policy.canHold(pendingBlock) ? null : policyOf(pendingBlock));
+            sealPolicy = policy;
+
+            if (sealTimerTask != null) {
+                sealTimerTask.cancel(false);
+                sealTimerTask = null;
+            }
+            if (policy.getMaxAgeMillis() > 0) {
+                if (sealTimer == null) {
+                    sealTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "ledger-seal-timer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+                long period = Math.max(1, policy.getMaxAgeMillis() / 10);
+                sealTimerTask = sealTimer.scheduleAtFixedRate(this::sealExpiredBlock, period, period,
+                        TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+
+        //Block might already be full under the new policy
+        Block block = uncommittedBlock;
+        if (policyOf(block).isFull(block)) {
+            commitQuietly(block);
+        }
+    }
+
+    /**
+     * Seal the uncommitted block if it has been open longer than the policy allows
+     */
+    private void sealExpiredBlock() {
+        Block block = uncommittedBlock;
+        if (policyOf(block).isExpired(block, System.currentTimeMillis())) {
+            commitQuietly(block);
+        }
+    }
+
+    /**
+     * Commit block nobody waits for. If the log has failed the block stays uncommitted
+     * and the next submitter is rejected by the log
+     * @param block
+     */
+    private void commitQuietly(Block block) {
+        try {
+            commitBlock(block, "Commit Block");
+        } catch (LedgerException e) {
+            //Log stays failed, see hasWriteAheadLogFailed
+        }
+    }
+
+    /**
+     * Enable or disable sealing blocks on a background thread. When enabled, the transaction
+     * filling a block only swaps in the next block and Merkle hashing happens off the submit path.
+     * Blocks are still hashed and published strictly in order
+     * @param asynchronous
+     */
+    public void setAsynchronousSealing(boolean asynchronous) {
+
+        ExecutorService executor;
+        commitLock.writeLock().lock();
+        try {
+            executor = sealer;
+            if (asynchronous == (executor != null)) {
+                return;
+            }
+            sealer = asynchronous ? Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ledger-sealer");
+                thread.setDaemon(true);
+                return thread;
+            }) : null;
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+
+        //Let already queued blocks be published
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Wait until every block committed so far has been hashed and published
+     * @throws LedgerException
+     */
+    public void awaitSealing() throws LedgerException {
+
+        ExecutorService executor = sealer;
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.submit(() -> { }).get();
+        } catch (RejectedExecutionException e) {
+            //Sealer has been shut down and drained its queue
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LedgerException("Await Sealing", "Interrupted While Waiting For Sealing");
+        } catch (ExecutionException e) {
+            throw new LedgerException("Await Sealing", "Sealing Failed");
+        }
+    }
+
+    /**
+     * Attach write ahead log to the Ledger. The in-memory state is replaced by the state
+     * replayed from the log, after which every accepted operation is appended to it.
+     * A write or fsync failure of the log is fatal, see hasWriteAheadLogFailed
+     * @param path
+     * @param durability
+     * @return int representing number of replayed records
+     * @throws LedgerException
+     */
+    public int attachWriteAheadLog(Path path, WriteAheadLog.Durability durability) throws LedgerException {
+        reset();
+        return replayWriteAheadLog(path, durability, 0);
+    }
+
+    /**
+     * Replay write ahead log from the given position on top of the current state and attach it
+     * @param path
+     * @param durability
+     * @param from log position of the first record to replay
+     * @return int representing number of replayed records
+     * @throws LedgerException
+     */
+    private int replayWriteAheadLog(Path path, WriteAheadLog.Durability durability, long from)
+            throws LedgerException {
+
+        WriteAheadLog log;
+        try {
+            log = new WriteAheadLog(path, durability);
+        } catch (IOException e) {
+            throw new LedgerException("Attach Write Ahead Log", "Write Ahead Log Cannot Be Opened");
+        }
+
+        LedgerException failure;
+        commitLock.writeLock().lock();
+        try {
+            int records = log.replay(from, new WriteAheadLog.ReplayHandler() {
+                @Override
+                public void createAccount(String address) throws LedgerException {
+                    Ledger.this.createAccount(address);
+                }
+
+                @Override
+                public void processTransaction(String transactionId, int amount, int fee, String note,
+                                               String payer, String receiver) throws LedgerException {
+                    replayTransaction(new Transaction(transactionId, amount, fee, note,
+                            new Account(payer, 0), new Account(receiver, 0)));
+                }
+
+                @Override
+                public void sealBlock(int blockNumber, BlockSealPolicy policy) throws LedgerException {
+                    //Seal under the logged policy so that validation checks the block against it
+                    Block block = uncommittedBlock;
+                    if (block.getBlockNumber() == blockNumber) {
+                        block.setSealPolicy(policy);
+                        commitBlock(block, "Replay Write Ahead Log");
+                    }
+                }
+            });
+            writeAheadLog = log;
+            return records;
+        } catch (IOException e) {
+            failure = new LedgerException("Attach Write Ahead Log", "Write Ahead Log Cannot Be Read");
+        } catch (LedgerException e) {
+            failure = e;
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+
+        //Do not leave partially replayed state behind
+        closeQuietly(log);
+        reset();
+        throw failure;
+    }
+
+    /**
+     * Restart the Ledger from the latest snapshot in the directory and the write ahead log
+     * records written after it, so that only the log tail is replayed. Blocks committed before
+     * the snapshot are not kept in memory, they are available through an attached block store.
+     * Committed transaction ids are read from the transaction files next to the snapshot
+     * @param snapshotDirectory directory of periodic snapshots
+     * @param path write ahead log or Null to restore the snapshot only
+     * @param durability
+     * @return int representing number of replayed records
+     * @throws LedgerException
+     */
+    public int restore(Path snapshotDirectory, Path path, WriteAheadLog.Durability durability)
+            throws LedgerException {
+
+        reset();
+
+        AccountSnapshot snapshot = readLatestSnapshot(snapshotDirectory);
+        if (snapshot == null) {
+            return path == null ? 0 : replayWriteAheadLog(path, durability, 0);
+        }
+        if (path != null && snapshot.getLogPosition() < 0) {
+            throw new LedgerException("Restore", "Snapshot Has Been Taken Without Write Ahead Log");
+        }
+
+        Map<String,Integer> transactions;
+        try {
+            transactions = AccountSnapshot.readTransactions(snapshotDirectory, snapshot.getBlockNumber());
+            //Chain continues from the snapshot, later transaction files are written again
+            AccountSnapshot.truncateTransactions(snapshotDirectory, snapshot.getBlockNumber());
+        } catch (IOException e) {
+            throw new LedgerException("Restore", "Transaction Ids Of The Snapshot Cannot Be Read");
+        }
+
+        commitLock.writeLock().lock();
+        try {
+            installSnapshot(snapshot, transactions);
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+        return path == null ? 0 : replayWriteAheadLog(path, durability, snapshot.getLogPosition());
+    }
+
+    /**
+     * Read the most recent complete snapshot in the directory
+     * @param directory
+     * @return AccountSnapshot or Null if there is none
+     */
+    private static AccountSnapshot readLatestSnapshot(Path directory) throws LedgerException {
+
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "snapshot-*.dat")) {
+                stream.forEach(files::add);
+            } catch (IOException e) {
+                throw new LedgerException("Restore", "Snapshot Directory Cannot Be Read");
+            }
+        }
+
+        //Names are ordered by block number, fall back to an older snapshot if the latest is damaged
+        files.sort(Comparator.reverseOrder());
+        for (Path file : files) {
+            try {
+                return AccountSnapshot.read(file);
+            } catch (IOException e) {
+                //Try the previous snapshot
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replace empty state with the snapshot. Requires commit lock to be held exclusively
+     * @param snapshot
+     * @param transactions block number of every transaction id committed up to the snapshot
+     */
+    private void installSnapshot(AccountSnapshot snapshot, Map<String,Integer> transactions) {
+
+        //Tip block holding every committed account, the blocks themselves stay in the block store
+        Block tip = new Block(snapshot.getBlockNumber(), null);
+        AccountHistory history = new AccountHistory(snapshot.getBlockNumber());
+        for (int i = 0; i < snapshot.getAccountCount(); i++) {
+            String address = snapshot.getAddress(i);
+            tip.addAccount(address, new Account(address, (int) snapshot.getBalance(i)));
+            history.record(address, snapshot.getBlockNumber(), (int) snapshot.getBalance(i));
+        }
+        tip.setHash(snapshot.getBlockHash());
+        accountHistory = history;
+        this.snapshot = new LedgerSnapshot(snapshot.getBlockNumber(), snapshot.getBlockHash(), history,
+                history.getAccountCount(), snapshot.getTotalFees());
+        tip.commitAccounts();
+
+        transactionIndex.putAll(transactions);
+        committedFees = snapshot.getTotalFees();
+        lastCommittedBlock = snapshot.getBlockNumber();
+
+        //Blocks before the snapshot are validated only if a block store holds them
+        validatedThrough = snapshot.getValidatedThrough();
+        restoredThrough = snapshot.getBlockNumber();
+
+        openNextBlock(tip, tip.getHash());
+    }
+
+    /**
+     * Capture committed state at the tip of the chain, once every committed block has been sealed.
+     * Only the immutable committed state and the log position are taken under the commit lock,
+     * the account table is copied afterwards
+     * @return AccountSnapshot
+     * @throws LedgerException
+     */
+    public AccountSnapshot takeSnapshot() throws LedgerException {
+
+        LedgerSnapshot state;
+        int validated;
+        long logPosition;
+        while (true) {
+            awaitSealing();
+
+            commitLock.writeLock().lock();
+            try {
+                //Blocks committed in the meantime have to be sealed first
+                if (!sealingBlocks.isEmpty()) {
+                    continue;
+                }
+                if (lastCommittedBlock == 0) {
+                    throw new LedgerException("Take Snapshot", "No Block Has Been Committed");
+                }
+
+                state = snapshot;
+                validated = validatedThrough;
+                WriteAheadLog log = writeAheadLog;
+                logPosition = log == null ? -1 : log.getSealPosition();
+                break;
+            } finally {
+                commitLock.writeLock().unlock();
+            }
+        }
+
+        String[] addresses = new String[state.getAccountCount()];
+        long[] balances = new long[addresses.length];
+        int index = 0;
+        for (Map.Entry<String,Integer> entry : state.getBalances().entrySet()) {
+            addresses[index] = entry.getKey();
+            balances[index] = entry.getValue();
+            index++;
+        }
+        return new AccountSnapshot(state.getBlockNumber(), state.getBlockHash(), state.getTotalFees(),
+                validated, logPosition, addresses, balances);
+    }
+
+    /**
+     * Write snapshot of the committed state to the file. Ids of the transactions committed since
+     * the last transaction file in the same directory are written next to it first
+     * @param file
+     * @throws LedgerException
+     */
+    public void writeSnapshot(Path file) throws LedgerException {
+        synchronized (snapshotMonitor) {
+            AccountSnapshot snapshot = takeSnapshot();
+            try {
+                writeTransactions(file.toAbsolutePath().getParent(), snapshot.getBlockNumber());
+                snapshot.write(file);
+            } catch (IOException e) {
+                throw new LedgerException("Write Snapshot", "Snapshot Cannot Be Written");
+            }
+        }
+    }
+
+    /**
+     * Write ids of the transactions committed after the last transaction file in the directory
+     * up to the snapshot block
+     * @param directory
+     * @param toBlock
+     * @throws IOException
+     */
+    private void writeTransactions(Path directory, int toBlock) throws IOException {
+
+        int fromBlock = AccountSnapshot.getTransactionsThrough(directory);
+        if (fromBlock >= toBlock) {
+            return;
+        }
+
+        Map<String,Integer> transactions = new HashMap<>();
+        int restoredBlock = restoredThrough;
+        for (int blockNumber = fromBlock + 1; blockNumber <= toBlock; blockNumber++) {
+            Block block = findBlock(blockNumber);
+            if (block == null && blockNumber <= restoredBlock) {
+                //Blocks covered by the restored snapshot are only known to the transaction index
+                int from = fromBlock;
+                transactionIndex.forEach((transactionId, number) -> {
+                    if (number != PENDING_BLOCK && number > from && number <= restoredBlock) {
+                        transactions.put(transactionId, number);
+                    }
+                });
+                blockNumber = restoredBlock;
+                continue;
+            }
+            if (block == null) {
+                throw new IOException("Block Is Not Available: " + blockNumber);
+            }
+            for (Transaction transaction : block.getTransactionList()) {
+                transactions.put(transaction.getTransactionId(), blockNumber);
+            }
+        }
+        AccountSnapshot.writeTransactions(directory, fromBlock, toBlock, transactions);
+    }
+
+    /**
+     * Write snapshots into the directory every given number of committed blocks, on a background
+     * thread. Only the latest snapshot is kept
+     * @param directory
+     * @param blocks 0 to stop writing snapshots
+     * @throws LedgerException
+     */
+    public void setSnapshotInterval(Path directory, int blocks) throws LedgerException {
+
+        if (blocks < 0) {
+            throw new LedgerException("Set Snapshot Interval", "Interval Must Not Be Negative");
+        }
+        if (blocks > 0) {
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                throw new LedgerException("Set Snapshot Interval", "Snapshot Directory Cannot Be Created");
+            }
+        }
+
+        commitLock.writeLock().lock();
+        try {
+            snapshotDirectory = blocks > 0 ? directory : null;
+            snapshotInterval = blocks;
+            if (blocks > 0 && snapshotWriter == null) {
+                snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "ledger-snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write periodic snapshot and remove the snapshots it replaces
+     * @param directory
+     */
+    private void writePeriodicSnapshot(Path directory) {
+        try {
+            AccountSnapshot snapshot;
+            String name;
+            synchronized (snapshotMonitor) {
+                snapshot = takeSnapshot();
+                name = String.format("snapshot-%010d.dat", snapshot.getBlockNumber());
+                writeTransactions(directory, snapshot.getBlockNumber());
+                snapshot.write(directory.resolve(name));
+            }
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "snapshot-*.dat")) {
+                for (Path file : stream) {
+                    if (file.getFileName().toString().compareTo(name) < 0) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        } catch (LedgerException | IOException e) {
+            //Next interval writes a new snapshot
+        }
+    }
+
+    /**
+     * Wait until every periodic snapshot requested so far has been written
+     */
+    public void awaitSnapshots() {
+        ExecutorService executor = snapshotWriter;
+        if (executor != null) {
+            try {
+                executor.submit(() -> { }).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                //Snapshot failures are retried by the next interval
+            }
+        }
+    }
+
+    /**
+     * Apply logged transaction. Blocks are sealed by the logged seal records only, so the
+     * transaction is appended regardless of the current seal policy
+     * @param transaction
+     * @throws LedgerException
+     */
+    private void replayTransaction(Transaction transaction) throws LedgerException {
+
+        checkTransaction(transaction);
+        if(transactionIndex.putIfAbsent(transaction.getTransactionId(), PENDING_BLOCK) != null){
+            throw new LedgerException("Replay Write Ahead Log", "Transaction Id Must Be Unique");
+        }
+
+        Block block = uncommittedBlock;
+        if(bindAccount(block, transaction.getPayer()).getBalance() < (transaction.getAmount() + transaction.getFee())){
+            throw new LedgerException("Replay Write Ahead Log", "Payer Does Not Have Required Funds");
+        }
+        transaction.setPayer(bindAccountForUpdate(block, transaction.getPayer()));
+        transaction.setReceiver(bindAccountForUpdate(block, transaction.getReceiver()));
+
+        //Keep measuring block size when the policy limits it
+        BlockSealPolicy replayPolicy = new BlockSealPolicy(Integer.MAX_VALUE,
+                sealPolicy.getMaxBytes() > 0 ? Long.MAX_VALUE : 0, 0);
+        appendTransaction(block, transaction, replayPolicy);
+    }
+
+    /**
+     * Close write ahead log, forcing remaining records to disk. The Ledger is kept in memory only afterwards
+     * @throws LedgerException
+     */
+    public void detachWriteAheadLog() throws LedgerException {
+
+        WriteAheadLog log;
+        commitLock.writeLock().lock();
+        try {
+            log = writeAheadLog;
+            writeAheadLog = null;
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                throw new LedgerException("Detach Write Ahead Log", "Write Ahead Log Failed");
+            }
+        }
+    }
+
+    /**
+     * Attach store of committed blocks to the Ledger. Committed blocks missing from the store are
+     * written to it and from then on only the most recent blocks are kept in memory, older blocks
+     * are loaded from the store when asked for
+     * @param directory directory of the segment files
+     * @param residentBlocks number of most recent committed blocks kept in memory
+     * @throws LedgerException
+     */
+    public void attachBlockStore(Path directory, int residentBlocks) throws LedgerException {
+
+        if(residentBlocks < 1){
+            throw new LedgerException("Attach Block Store", "At Least One Block Must Stay Resident");
+        }
+
+        awaitSealing();
+
+        BlockStore store;
+        try {
+            store = new BlockStore(directory, BlockStore.DEFAULT_SEGMENT_SIZE);
+        } catch (IOException e) {
+            throw new LedgerException("Attach Block Store", "Block Store Cannot Be Opened");
+        }
+
+        commitLock.writeLock().lock();
+        try {
+            if(blockStore != null){
+                throw new LedgerException("Attach Block Store", "Block Store Is Already Attached");
+            }
+
+            //Stored blocks have to be the beginning of this chain, covering every block not in memory
+            int lastStored = store.getLastBlockNumber();
+            int firstResident = blockMap.isEmpty() ? lastCommittedBlock + 1 : blockMap.firstKey();
+            boolean matches = lastStored <= lastCommittedBlock && lastStored >= firstResident - 1;
+            if(matches && lastStored > 0){
+                String storedHash = store.readBlock(lastStored).getHash();
+                Block lastStoredBlock = blockMap.get(lastStored);
+                Block nextBlock = lastStored < lastCommittedBlock ? blockMap.get(lastStored + 1) : uncommittedBlock;
+                matches = lastStoredBlock != null ? storedHash.equals(lastStoredBlock.getHash())
+                        : storedHash.equals(nextBlock.getPreviousHash());
+            }
+            if(!matches){
+                store.close();
+                throw new LedgerException("Attach Block Store", "Block Store Does Not Match Ledger");
+            }
+
+            for(Block block : blockMap.tailMap(lastStored, false).values()){
+                store.append(block);
+            }
+
+            this.residentBlocks = residentBlocks;
+            blockStore = store;
+
+            //Oldest block in memory loads blocks before it from the store, such as after a restore
+            Block firstBlock = blockMap.isEmpty() ? uncommittedBlock : blockMap.firstEntry().getValue();
+            firstBlock.releasePreviousBlock(store);
+            evictBlocks(store);
+        } catch (IOException e) {
+            store.close();
+            throw new LedgerException("Attach Block Store", "Block Store Cannot Be Written");
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Check whether appending to the attached block store has failed. A store failure is fatal:
+     * blocks committed from then on cannot be evicted from memory, so every later transaction is
+     * rejected with Block Store Failed before it is applied. Restore the Ledger to continue
+     * @return true if an append to the attached block store has failed
+     */
+    public boolean hasBlockStoreFailed() {
+        BlockStore store = blockStore;
+        return store != null && store.hasFailed();
+    }
+
+    /**
+     * Reject operation filling blocks once the block store has failed
+     * @param action
+     * @throws LedgerException
+     */
+    private void checkBlockStore(String action) throws LedgerException {
+        if (hasBlockStoreFailed()) {
+            throw new LedgerException(action, "Block Store Failed");
+        }
+    }
+
+    /**
+     * Getter method for the block store
+     * @return BlockStore or Null if committed blocks are kept in memory only
+     */
+    public BlockStore getBlockStore() {
+        return blockStore;
+    }
+
+    /**
+     * Keep recently used stored blocks in memory, up to the given estimated size. Blocks evicted
+     * from the cache are loaded from the block store again when asked for
+     * @param capacity size of the cache in bytes, 0 to stop caching
+     * @throws LedgerException if no block store is attached
+     */
+    public void setBlockCache(long capacity) throws LedgerException {
+
+        if(capacity < 0){
+            throw new LedgerException("Set Block Cache", "Capacity Cannot Be Negative");
+        }
+
+        commitLock.writeLock().lock();
+        try {
+            BlockStore store = blockStore;
+            if(store == null){
+                throw new LedgerException("Set Block Cache", "Block Store Is Not Attached");
+            }
+            blockCache = capacity > 0 ? new BlockCache(capacity, store) : null;
+
+            //Oldest resident block walks back through the new cache
+            Block firstBlock = blockMap.isEmpty() ? uncommittedBlock : blockMap.firstEntry().getValue();
+            if(firstBlock.getBlockNumber() > 1){
+                firstBlock.releasePreviousBlock(getBlockLoader(store));
+            }
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Getter method for the block cache
+     * @return BlockCache or Null if stored blocks are not cached
+     */
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    private static void closeQuietly(WriteAheadLog log) {
+        try {
+            log.close();
+        } catch (IOException e) {
+            //Log is being abandoned
+        }
+    }
+
+    /**
+     * Get Account balance by address
+     * @param address
+     * @return Integer representing balance of the Account
+     * @throws LedgerException
+     */
+    public Integer getAccountBalance(String address) throws LedgerException {
+
+        LedgerSnapshot committed = snapshot;
+        if(committed.getBlockNumber() == 0){
+            throw new LedgerException("Get Account Balance", "Account Is Not Committed to a Block");
+        }
+
+        Integer balance = committed.balance(address);
+        if(balance == null){
+            throw new LedgerException("Get Account Balance", "Account Does Not Exist");
+        }
+        return balance;
+    }
+
+    /**
+     * Get Account balance as of the committed block, from the version chain of the account
+     * @param address
+     * @param blockNumber
+     * @return Integer representing balance of the Account after the block
+     * @throws LedgerException
+     */
+    public Integer getAccountBalance(String address, int blockNumber) throws LedgerException {
+
+        if(blockNumber < 1 || blockNumber > lastCommittedBlock){
+            throw new LedgerException("Get Account Balance", "Block Is Not Committed");
+        }
+
+        AccountHistory history = accountHistory;
+        if(!history.covers(blockNumber)){
+            throw new LedgerException("Get Account Balance", "Block Precedes Account History");
+        }
+
+        Integer balance = history.getBalance(address, blockNumber);
+        if(balance == null){
+            throw new LedgerException("Get Account Balance", "Account Does Not Exist");
+        }
+        return balance;
+    }
+
+    /**
+     * Get all Account balances that are part of the Blockchain
+     * @return read-only Map representing Accounts and balances as of the last committed block
+     */
+    public Map<String,Integer> getAccountBalances(){
+
+        LedgerSnapshot committed = snapshot;
+        if(committed.getBlockNumber() == 0)
+            return null;
+
+        return committed.getBalances();
+    }
+
+    /**
+     * Get immutable view of the committed state as of the last committed block, without locking
+     * @return LedgerSnapshot
+     */
+    public LedgerSnapshot snapshot(){
+        return snapshot;
+    }
+
+    /**
+     * Get Block by id
+     * @param blockNumber
+     * @return Block or Null
+     */
+    public Block getBlock (Integer blockNumber) throws LedgerException {
+        Block block = findBlock(blockNumber);
+        if(block == null){
+            throw new LedgerException("Get Block", "Block Does Not Exist");
+        }
+        return block;
+    }
+
+    /**
+     * Get Transaction by id
+     * @param transactionId
+     * @return Transaction or Null
+     */
+    public Transaction getTransaction (String transactionId){
+
+        // Finding owning block through the transaction index
+        Integer blockNumber = transactionIndex.get(transactionId);
+        if(blockNumber == null || blockNumber == PENDING_BLOCK){
+            return null;
+        }
+
+        // Blocks move from uncommitted to sealing to committed, so look them up in that order
+        Block block = uncommittedBlock;
+        if(block.getBlockNumber() != blockNumber.intValue()){
+            block = sealingBlocks.get(blockNumber);
+        }
+        if(block == null){
+            block = findBlock(blockNumber);
+        }
+        return block == null ? null : block.getTransaction(transactionId);
+    }
+
+    /**
+     * Get proof that the transaction is included in its committed block
+     * @param transactionId
+     * @return MerkleProof verifiable against the hash of the block
+     * @throws LedgerException
+     */
+    public MerkleProof getInclusionProof(String transactionId) throws LedgerException {
+
+        Integer blockNumber = transactionIndex.get(transactionId);
+        if(blockNumber == null || blockNumber == PENDING_BLOCK){
+            throw new LedgerException("Get Inclusion Proof", "Transaction Does Not Exist");
+        }
+
+        Block block = findBlock(blockNumber);
+        if(block == null){
+            throw new LedgerException("Get Inclusion Proof", "Transaction Is Not Committed");
+        }
+
+        List<Transaction> transactions = block.getTransactionList();
+        for(int index = 0; index < transactions.size(); index++){
+            if(transactions.get(index).getTransactionId().equals(transactionId)){
+                // Seed is the first leaf of every block
+                return getMerkleTree(block).getProof(index + 1);
+            }
+        }
+        throw new LedgerException("Get Inclusion Proof", "Transaction Does Not Exist");
+    }
+
+    /**
+     * Verify inclusion proof against the hash of the block
+     * @param proof
+     * @param blockHash
+     * @return true if the proof leads to the block hash
+     */
+    public static boolean verifyInclusionProof(MerkleProof proof, String blockHash){
+        return MerkleProof.verify(proof, blockHash);
+    }
+
+    /**
+     * Get number of Blocks in the Blockchain
+     * @return int representing number of blocks committed to Blockchain
+     */
+    public int getNumberOfBlocks(){
+        return lastCommittedBlock;
+    }
+
+    /**
+     * Method for validating Blockchain.
+     * Check each block committed since the last validation for Hash consistency
+     * Check each block committed since the last validation for Transaction count
+     * Check account balances against the total
+     */
+    public void validate() throws LedgerException {
+
+        if(lastCommittedBlock == 0){
+            throw new LedgerException("Validate", "No Block Has Been Committed");
+        }
+
+        //Keep blocks from being committed while validating
+        commitLock.readLock().lock();
+        try {
+            validateBlocks();
+        } finally {
+            commitLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Validate blocks committed since the last successful validation and check
+     * committed balances against the running fee total
+     * @throws LedgerException
+     */
+    private void validateBlocks() throws LedgerException {
+
+        long totalBalance = accountHistory.getTotalBalance();
+        int lastBlock = lastCommittedBlock;
+
+        for(int blockNumber = validatedThrough + 1; blockNumber <= lastBlock; blockNumber++){
+            Block block = findBlock(blockNumber);
+            if(block == null){
+                if(blockNumber <= restoredThrough){
+                    //Covered by the restored snapshot without a block store holding it
+                    continue;
+                }
+                throw new LedgerException("Validate", "Block " + blockNumber + " Is Missing");
+            }
+
+            //Check for Hash Consistency
+            if(block.getBlockNumber() != 1){
+                Block previousBlock = block.getPreviousBlock();
+                if(previousBlock == null){
+                    if(blockNumber - 1 > restoredThrough){
+                        throw new LedgerException("Validate", "Block " + (blockNumber - 1) + " Is Missing");
+                    }
+                } else if(!block.getPreviousHash().equals(previousBlock.getHash())){
+                    throw new LedgerException("Validate", "Hash Is Inconsistent: "
+                            + block.getBlockNumber());
+                }
+            }
+
+            //Check for Transaction Count and size against the policy the block has been sealed under
+            BlockSealPolicy policy = block.getSealPolicy() != null ? block.getSealPolicy() : BlockSealPolicy.DEFAULT;
+            if(!policy.isValidTransactionCount(block)){
+                throw new LedgerException("Validate", "Transaction Count Is Not "
+                        + policy.getMaxTransactions() + " In Block: " + block.getBlockNumber());
+            }
+            if(!policy.isValidByteSize(block)){
+                throw new LedgerException("Validate", "Block Size Exceeds " + policy.getMaxBytes()
+                        + " Bytes In Block: " + block.getBlockNumber());
+            }
+        }
+
+        long adjustedBalance = totalBalance + committedFees;
+
+        //Check for account balances against the total
+        if(adjustedBalance != Integer.MAX_VALUE){
+            throw new LedgerException("Validate", "Balance Does Not Add Up");
+        }
+
+        //Blocks are immutable once committed, so they do not need to be checked again
+        validatedThrough = lastBlock;
+    }
+
+    /**
+     * Method for auditing Blockchain in depth.
+     * Recompute Merkle root of every committed block in parallel
+     * Check every block for Hash consistency with the block before it
+     * Unlike validate, every bad block is reported rather than only the first one.
+     * Blocks covered by the snapshot the Ledger has been restored from are skipped
+     * unless a block store holds them
+     * @return Map of block number to failure reason, empty if every block passed
+     */
+    public Map<Integer,String> audit(){
+
+        int lastBlock = lastCommittedBlock;
+        int restoredBlock = restoredThrough;
+        String[] hashes = new String[lastBlock];
+        String[] previousHashes = new String[lastBlock];
+
+        //Recompute Merkle roots across cores, loading stored blocks one at a time
+        Map<Integer,String> failures = new ConcurrentSkipListMap<>();
+        IntStream.rangeClosed(1, lastBlock).parallel().forEach(blockNumber -> {
+            Block block = findBlock(blockNumber);
+            if(block == null){
+                if(blockNumber > restoredBlock){
+                    failures.put(blockNumber, "Block Is Not Available");
+                }
+                return;
+            }
+            hashes[blockNumber - 1] = block.getHash();
+            previousHashes[blockNumber - 1] = block.getPreviousHash();
+            if(!computeHash(block).equals(block.getHash())){
+                failures.put(blockNumber, "Merkle Root Mismatch");
+            }
+        });
+
+        //Check chain links in order
+        for(int i = 1; i < lastBlock; i++){
+            if(hashes[i - 1] != null && previousHashes[i] != null && !hashes[i - 1].equals(previousHashes[i])){
+                failures.merge(i + 1, "Hash Is Inconsistent",
+                        (first, second) -> first + ", " + second);
+            }
+        }
+
+        return new TreeMap<>(failures);
+    }
+
+    /**
+     * Get number of the last block checked by a successful validation
+     * @return int representing validation cursor, 0 if nothing has been validated
+     */
+    public int getValidatedThrough(){
+        return validatedThrough;
+    }
+
+    /**
+     * Get sum of the fees of all committed transactions
+     * @return long representing total fees
+     */
+    public long getTotalFees(){
+        return committedFees;
+    }
+
+    /**
+     * Helper method for CommandProcessor
+     * @return current block we are working with
+     */
+    public Block getUncommittedBlock(){
+        return uncommittedBlock;
+    }
+
+    /**
+     * Helper method allowing reset the state of the Ledger
+     */
+    public void reset(){
+        try {
+            awaitSealing();
+        } catch (LedgerException e) {
+            //Pending blocks are discarded anyway
+        }
+        try {
+            detachWriteAheadLog();
+        } catch (LedgerException e) {
+            //Log is abandoned anyway
+        }
+
+        commitLock.writeLock().lock();
+        try {
+            if (blockStore != null) {
+                blockStore.close();
+                blockStore = null;
+            }
+            blockCache = null;
+            snapshotDirectory = null;
+            snapshotInterval = 0;
+            blockMap = new ConcurrentSkipListMap<>();
+            uncommittedBlock = new Block(1, "");
+            uncommittedBlock.addAccount("master", new Account("master", Integer.MAX_VALUE));
+            transactionIndex = new ConcurrentHashMap<>();
+                accountHistory = new AccountHistory();
+            snapshot = LedgerSnapshot.EMPTY;
+            committedFees = 0;
+            validatedThrough = 0;
+            lastCommittedBlock = 0;
+            restoredThrough = 0;
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reset the Ledger and stop its background threads, once the Ledger is no longer used
+     */
+    public void shutdown(){
+        blockListeners.clear();
+        LedgerPublisher currentPublisher = publisher;
+        publisher = null;
+        if (currentPublisher != null) {
+            currentPublisher.close();
+        }
+        awaitSnapshots();
+        setAsynchronousSealing(false);
+        reset();
+
+        ScheduledExecutorService timer;
+        ExecutorService writer;
+        commitLock.writeLock().lock();
+        try {
+            if (sealTimerTask != null) {
+                sealTimerTask.cancel(false);
+                sealTimerTask = null;
+            }
+            timer = sealTimer;
+            writer = snapshotWriter;
+            sealTimer = null;
+            snapshotWriter = null;
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+        if (timer != null) {
+            timer.shutdown();
+        }
+        if (writer != null) {
+            writer.shutdown();
+        }
     }
 }
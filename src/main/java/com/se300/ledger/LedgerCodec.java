@@ -0,0 +1,403 @@
+package com.se300.ledger;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * LedgerCodec class implementation of the canonical binary encoding of ledger data.
+ * Transactions, block headers and account entries are written field by field into a reusable
+ * ByteBuffer, strings as their UTF-8 length followed by the bytes, and read back from any buffer.
+ * Records are framed by their length and a CRC32 checksum and start with the codec version, so the
+ * write ahead log, the block store and snapshots share one format and can detect torn writes.
+ * The codec is not thread safe, every writer keeps its own instance.
+ */
+public class LedgerCodec {
+
+    public static final byte VERSION = 1;
+
+    // Length and checksum in front of every record
+    public static final int HEADER_SIZE = 8;
+
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer;
+
+    /**
+     * LedgerCodec Constructor
+     * @param initialCapacity initial size of the buffer, grown when needed
+     */
+    public LedgerCodec(int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(Math.max(initialCapacity, 16));
+    }
+
+    /**
+     * Getter method for the buffer holding the encoded bytes
+     * @return
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Clear the buffer
+     * @return this codec
+     */
+    public LedgerCodec clear() {
+        buffer.clear();
+        return this;
+    }
+
+    /**
+     * Start framed record, leaving room for its length and checksum
+     * @return this codec
+     */
+    public LedgerCodec startRecord() {
+        buffer.clear();
+        buffer.position(HEADER_SIZE);
+        buffer.put(VERSION);
+        return this;
+    }
+
+    /**
+     * Fill in length and checksum of the record and flip the buffer for writing it out
+     * @return ByteBuffer holding the framed record
+     */
+    public ByteBuffer finishRecord() {
+        int length = buffer.position() - HEADER_SIZE;
+        crc.reset();
+        crc.update(buffer.array(), HEADER_SIZE, length);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Get size of the transaction as encoded by putTransaction after a version byte, such as
+     * a Merkle leaf, without encoding it
+     * @param transaction
+     * @return int representing number of bytes
+     */
+    public static int sizeOf(Transaction transaction) {
+        return 1 + sizeOf(transaction.getTransactionId()) + 8 + sizeOf(transaction.getNote())
+                + sizeOf(transaction.getPayer().getAddress()) + sizeOf(transaction.getReceiver().getAddress());
+    }
+
+    private static int sizeOf(String value) {
+        if (value == null) {
+            return 4;
+        }
+        int length = 4;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                //Unpaired surrogate is encoded as '?' by getBytes
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Write raw bytes without a length
+     * @param bytes
+     * @return this codec
+     */
+    public LedgerCodec putBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        buffer.put(bytes);
+        return this;
+    }
+
+    /**
+     * Write byte
+     * @param value
+     * @return this codec
+     */
+    public LedgerCodec putByte(byte value) {
+        ensureCapacity(1);
+        buffer.put(value);
+        return this;
+    }
+
+    /**
+     * Write int
+     * @param value
+     * @return this codec
+     */
+    public LedgerCodec putInt(int value) {
+        ensureCapacity(4);
+        buffer.putInt(value);
+        return this;
+    }
+
+    /**
+     * Write long
+     * @param value
+     * @return this codec
+     */
+    public LedgerCodec putLong(long value) {
+        ensureCapacity(8);
+        buffer.putLong(value);
+        return this;
+    }
+
+    /**
+     * Write string as its UTF-8 length and bytes, -1 for Null. ASCII strings are written
+     * straight into the buffer without an intermediate byte array
+     * @param value
+     * @return this codec
+     */
+    public LedgerCodec putString(String value) {
+        if (value == null) {
+            return putInt(-1);
+        }
+
+        int length = value.length();
+        ensureCapacity(4 + length);
+        int start = buffer.position();
+        buffer.putInt(length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                //Not ASCII, fall back to the general encoder
+                buffer.position(start);
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                ensureCapacity(4 + bytes.length);
+                buffer.putInt(bytes.length);
+                buffer.put(bytes);
+                return this;
+            }
+            buffer.put((byte) c);
+        }
+        return this;
+    }
+
+    /**
+     * Write transaction with payer and receiver by address
+     * @param transaction
+     * @return this codec
+     */
+    public LedgerCodec putTransaction(Transaction transaction) {
+        putString(transaction.getTransactionId());
+        putInt(transaction.getAmount());
+        putInt(transaction.getFee());
+        putString(transaction.getNote());
+        putString(transaction.getPayer().getAddress());
+        putString(transaction.getReceiver().getAddress());
+        return this;
+    }
+
+    /**
+     * Write account entry
+     * @param address
+     * @param balance
+     * @return this codec
+     */
+    public LedgerCodec putAccount(String address, long balance) {
+        putString(address);
+        putLong(balance);
+        return this;
+    }
+
+    /**
+     * Write seal policy
+     * @param policy
+     * @return this codec
+     */
+    public LedgerCodec putSealPolicy(BlockSealPolicy policy) {
+        putInt(policy.getMaxTransactions());
+        putLong(policy.getMaxBytes());
+        putLong(policy.getMaxAgeMillis());
+        return this;
+    }
+
+    /**
+     * Write block header: number, hashes, seal policy, size and opening time
+     * @param block
+     * @return this codec
+     */
+    public LedgerCodec putBlockHeader(Block block) {
+        putInt(block.getBlockNumber());
+        putString(block.getPreviousHash());
+        putString(block.getHash());
+        putSealPolicy(block.getSealPolicy() != null ? block.getSealPolicy() : BlockSealPolicy.DEFAULT);
+        putLong(block.getByteSize());
+        putLong(block.getOpenedAt());
+        return this;
+    }
+
+    /**
+     * Write block: header, transactions and the accounts changed by the block
+     * @param block
+     * @return this codec
+     */
+    public LedgerCodec putBlock(Block block) {
+        putBlockHeader(block);
+
+        List<Transaction> transactions = block.getTransactionList();
+        putInt(transactions.size());
+        for (Transaction transaction : transactions) {
+            putTransaction(transaction);
+        }
+
+        putInt(block.getChangedAccounts().size());
+        for (Account account : block.getChangedAccounts()) {
+            putAccount(account.getAddress(), account.getBalance());
+        }
+        return this;
+    }
+
+    /**
+     * Read and check the codec version at the start of a record
+     * @param record
+     * @throws IllegalStateException if the record has been written by an unknown version
+     */
+    public static void checkVersion(ByteBuffer record) {
+        byte version = record.get();
+        if (version != VERSION) {
+            throw new IllegalStateException("Unknown Codec Version " + version);
+        }
+    }
+
+    /**
+     * Read string
+     * @param record
+     * @return String or Null
+     */
+    public static String getString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value;
+        if (record.hasArray()) {
+            value = new String(record.array(), record.arrayOffset() + record.position(), length,
+                    StandardCharsets.UTF_8);
+            record.position(record.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            record.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * Read transaction. Payer and receiver are placeholder accounts carrying only the address,
+     * to be bound to the accounts of the block
+     * @param record
+     * @return Transaction
+     */
+    public static Transaction getTransaction(ByteBuffer record) {
+        String transactionId = getString(record);
+        int amount = record.getInt();
+        int fee = record.getInt();
+        String note = getString(record);
+        String payer = getString(record);
+        String receiver = getString(record);
+        return new Transaction(transactionId, amount, fee, note, new Account(payer, 0), new Account(receiver, 0));
+    }
+
+    /**
+     * Read account entry
+     * @param record
+     * @return Account
+     */
+    public static Account getAccount(ByteBuffer record) {
+        String address = getString(record);
+        return new Account(address, (int) record.getLong());
+    }
+
+    /**
+     * Read seal policy
+     * @param record
+     * @return BlockSealPolicy
+     */
+    public static BlockSealPolicy getSealPolicy(ByteBuffer record) {
+        return new BlockSealPolicy(record.getInt(), record.getLong(), record.getLong());
+    }
+
+    /**
+     * Read block header into a new block without transactions or accounts
+     * @param record
+     * @return Block
+     */
+    public static Block getBlockHeader(ByteBuffer record) {
+        Block block = new Block(record.getInt(), getString(record));
+        block.setHash(getString(record));
+        block.setSealPolicy(getSealPolicy(record));
+        block.restoreSize(record.getLong(), record.getLong());
+        return block;
+    }
+
+    /**
+     * Read block written by putBlock. The block holds only the accounts it has changed,
+     * other accounts are resolved through the blocks before it
+     * @param record
+     * @param blockLoader loader of the previous blocks or Null
+     * @return Block
+     */
+    public static Block getBlock(ByteBuffer record, BlockLoader blockLoader) {
+        Block block = getBlockHeader(record);
+
+        int transactionCount = record.getInt();
+        List<Transaction> transactions = new ArrayList<>(transactionCount);
+        for (int i = 0; i < transactionCount; i++) {
+            transactions.add(getTransaction(record));
+        }
+
+        int accountCount = record.getInt();
+        for (int i = 0; i < accountCount; i++) {
+            Account account = getAccount(record);
+            block.addAccount(account.getAddress(), account);
+        }
+
+        //Payer and receiver are accounts changed by the block
+        for (Transaction transaction : transactions) {
+            transaction.setPayer(getParty(block, transaction.getPayer().getAddress()));
+            transaction.setReceiver(getParty(block, transaction.getReceiver().getAddress()));
+        }
+
+        block.restore(transactions, blockLoader);
+        return block;
+    }
+
+    private static Account getParty(Block block, String address) {
+        Account account = block.getChangedAccount(address);
+        return account != null ? account : new Account(address, 0);
+    }
+
+    /**
+     * Check checksum of the record payload
+     * @param payload
+     * @param checksum
+     * @return true if the payload is intact
+     */
+    public static boolean isIntact(byte[] payload, int checksum) {
+        CRC32 payloadCrc = new CRC32();
+        payloadCrc.update(payload);
+        return (int) payloadCrc.getValue() == checksum;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+}
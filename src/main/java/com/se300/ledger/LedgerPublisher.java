@@ -0,0 +1,212 @@
+package com.se300.ledger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LedgerPublisher class implementation streaming committed blocks and their transactions to
+ * java.util.concurrent.Flow subscribers, such as indexers and notifiers, instead of having them poll
+ * the Ledger. Every subscriber is served on a publisher thread from a bounded buffer of its own and
+ * items are delivered as the subscriber requests them. Items are offered without waiting, so when the
+ * buffer of a slow subscriber is full the item is dropped for that subscriber and counted, and the
+ * committing thread is never held up. A subscriber that misses an item has its subscription cancelled
+ * and receives onError with a LedgerException instead of a stream with a gap in it; it can catch up
+ * with getBlock from the block after the last one it received and subscribe again.
+ */
+public class LedgerPublisher implements BlockListener, AutoCloseable {
+
+    private final ExecutorService executor;
+    private final SubmissionPublisher<Block> blockPublisher;
+    private final SubmissionPublisher<Transaction> transactionPublisher;
+
+    private final LongAdder droppedBlocks = new LongAdder();
+    private final LongAdder droppedTransactions = new LongAdder();
+
+    /**
+     * LedgerPublisher Constructor
+     * @param bufferCapacity maximum number of items buffered for every subscriber
+     */
+    public LedgerPublisher(int bufferCapacity) {
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.blockPublisher = new SubmissionPublisher<>(executor, bufferCapacity);
+        this.transactionPublisher = new SubmissionPublisher<>(executor, bufferCapacity);
+    }
+
+    /**
+     * Get publisher of committed blocks, in block number order
+     * @return Flow.Publisher of blocks
+     */
+    public Flow.Publisher<Block> getBlockPublisher() {
+        return subscriber -> blockPublisher.subscribe(new LossSignalingSubscriber<>(subscriber, "Publish Block"));
+    }
+
+    /**
+     * Get publisher of committed transactions, in commit order
+     * @return Flow.Publisher of transactions
+     */
+    public Flow.Publisher<Transaction> getTransactionPublisher() {
+        return subscriber -> transactionPublisher.subscribe(
+                new LossSignalingSubscriber<>(subscriber, "Publish Transaction"));
+    }
+
+    /**
+     * Get number of subscribers of blocks and transactions
+     * @return
+     */
+    public int getSubscriberCount() {
+        return blockPublisher.getNumberOfSubscribers() + transactionPublisher.getNumberOfSubscribers();
+    }
+
+    /**
+     * Get number of blocks dropped for subscribers with a full buffer
+     * @return
+     */
+    public long getDroppedBlockCount() {
+        return droppedBlocks.sum();
+    }
+
+    /**
+     * Get number of transactions dropped for subscribers with a full buffer
+     * @return
+     */
+    public long getDroppedTransactionCount() {
+        return droppedTransactions.sum();
+    }
+
+    /**
+     * Offer committed block and its transactions to the subscribers
+     * @param block
+     */
+    @Override
+    public void blockCommitted(Block block) {
+        if (blockPublisher.hasSubscribers()) {
+            blockPublisher.offer(block, (subscriber, item) -> {
+                droppedBlocks.increment();
+                signalLoss(subscriber);
+                return false;
+            });
+        }
+        if (transactionPublisher.hasSubscribers()) {
+            for (Transaction transaction : block.getTransactionList()) {
+                transactionPublisher.offer(transaction, (subscriber, item) -> {
+                    droppedTransactions.increment();
+                    signalLoss(subscriber);
+                    return false;
+                });
+            }
+        }
+    }
+
+    /**
+     * Cancel subscription that missed an item and signal the loss to its subscriber off the committing thread
+     * @param subscriber
+     */
+    private void signalLoss(Flow.Subscriber<?> subscriber) {
+        LossSignalingSubscriber<?> lossSignaling = (LossSignalingSubscriber<?>) subscriber;
+        if (!lossSignaling.cancel()) {
+            return;
+        }
+        try {
+            executor.execute(lossSignaling::signalLoss);
+        } catch (RejectedExecutionException e) {
+            //Publisher is closing, signal on the committing thread
+            lossSignaling.signalLoss();
+        }
+    }
+
+    /**
+     * Complete the subscriptions once the buffered items have been delivered
+     */
+    @Override
+    public void close() {
+        blockPublisher.close();
+        transactionPublisher.close();
+        executor.shutdown();
+    }
+
+    /**
+     * Subscriber forwarding to the subscriber of the client, ending its stream with onError
+     * once an item has been dropped for it
+     */
+    private static final class LossSignalingSubscriber<T> implements Flow.Subscriber<T> {
+
+        private final Flow.Subscriber<? super T> subscriber;
+        private final String action;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        // Set once subscribed, an item can be dropped before that
+        private volatile Flow.Subscription subscription;
+        // Set once the stream of the subscriber has ended, guarded by this
+        private boolean done;
+
+        LossSignalingSubscriber(Flow.Subscriber<? super T> subscriber, String action) {
+            this.subscriber = subscriber;
+            this.action = action;
+        }
+
+        @Override
+        public synchronized void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscriber.onSubscribe(subscription);
+            if (cancelled.get()) {
+                subscription.cancel();
+                signalLoss();
+            }
+        }
+
+        @Override
+        public synchronized void onNext(T item) {
+            if (!done) {
+                subscriber.onNext(item);
+            }
+        }
+
+        @Override
+        public synchronized void onError(Throwable throwable) {
+            if (!done) {
+                done = true;
+                subscriber.onError(throwable);
+            }
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            if (!done) {
+                done = true;
+                subscriber.onComplete();
+            }
+        }
+
+        /**
+         * Cancel the subscription after an item has been dropped
+         * @return true if the subscription was cancelled by this call
+         */
+        boolean cancel() {
+            if (!cancelled.compareAndSet(false, true)) {
+                return false;
+            }
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+            return true;
+        }
+
+        /**
+         * End the stream with onError, once the subscriber has been subscribed
+         */
+        synchronized void signalLoss() {
+            if (subscription != null) {
+                onError(new LedgerException(action, "Subscriber Buffer Is Full"));
+            }
+        }
+    }
+}
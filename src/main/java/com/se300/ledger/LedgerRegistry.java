@@ -0,0 +1,99 @@
+package com.se300.ledger;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * LedgerRegistry class implementation holding independent ledgers by name. Every ledger has its
+ * own blocks, accounts, locks and background threads, so ledgers of different tenants share
+ * nothing but the process and are processed in parallel.
+ */
+public class LedgerRegistry implements AutoCloseable {
+
+    private final ConcurrentMap<String,Ledger> ledgers = new ConcurrentHashMap<>();
+
+    /**
+     * Create new ledger under the name
+     * @param name
+     * @param description
+     * @param seed
+     * @return Ledger
+     * @throws LedgerException if a ledger with the name already exists
+     */
+    public Ledger createLedger(String name, String description, String seed) throws LedgerException {
+        Ledger ledger = new Ledger(name, description, seed);
+        if (ledgers.putIfAbsent(name, ledger) != null) {
+            throw new LedgerException("Create Ledger", "Ledger Already Exists");
+        }
+        return ledger;
+    }
+
+    /**
+     * Get ledger by name, creating it if it does not exist
+     * @param name
+     * @param description
+     * @param seed
+     * @return Ledger
+     */
+    public Ledger getOrCreateLedger(String name, String description, String seed) {
+        return ledgers.computeIfAbsent(name, key -> new Ledger(name, description, seed));
+    }
+
+    /**
+     * Get ledger by name
+     * @param name
+     * @return Ledger
+     * @throws LedgerException if no ledger with the name exists
+     */
+    public Ledger getLedger(String name) throws LedgerException {
+        Ledger ledger = ledgers.get(name);
+        if (ledger == null) {
+            throw new LedgerException("Get Ledger", "Ledger Does Not Exist");
+        }
+        return ledger;
+    }
+
+    /**
+     * Remove ledger and stop its background threads
+     * @param name
+     * @throws LedgerException if no ledger with the name exists
+     */
+    public void removeLedger(String name) throws LedgerException {
+        Ledger ledger = ledgers.remove(name);
+        if (ledger == null) {
+            throw new LedgerException("Remove Ledger", "Ledger Does Not Exist");
+        }
+        ledger.shutdown();
+    }
+
+    /**
+     * Get names of the registered ledgers
+     * @return sorted set of names
+     */
+    public Set<String> getLedgerNames() {
+        return new TreeSet<>(ledgers.keySet());
+    }
+
+    /**
+     * Get number of registered ledgers
+     * @return
+     */
+    public int size() {
+        return ledgers.size();
+    }
+
+    /**
+     * Remove every ledger
+     */
+    @Override
+    public void close() {
+        for (String name : ledgers.keySet()) {
+            Ledger ledger = ledgers.remove(name);
+            if (ledger != null) {
+                ledger.shutdown();
+            }
+        }
+    }
+}
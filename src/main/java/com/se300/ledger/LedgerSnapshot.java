@@ -0,0 +1,105 @@
+package com.se300.ledger;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * LedgerSnapshot class implementation of an immutable view of the committed state of a Ledger as of
+ * one block. The Ledger publishes a new snapshot on every block commit. Balances are not copied into
+ * the snapshot, they are read from the AccountHistory of the Ledger as of the snapshot block, so
+ * publishing costs the same however many accounts there are. Readers take the current snapshot
+ * without locking and keep seeing one consistent committed state however many blocks are committed
+ * meanwhile. Unlike AccountSnapshot, which is written to disk, a LedgerSnapshot lives in memory only.
+ */
+public final class LedgerSnapshot {
+
+    static final LedgerSnapshot EMPTY = new LedgerSnapshot(0, null, new AccountHistory(), 0, 0);
+
+    private final int blockNumber;
+    private final String blockHash;
+    private final AccountHistory history;
+    private final int accountCount;
+    private final long totalFees;
+
+    // Balances of all accounts, built on first use
+    private volatile Map<String,Integer> balances;
+
+    /**
+     * LedgerSnapshot Constructor
+     * @param blockNumber
+     * @param blockHash
+     * @param history history holding the balances as of the block
+     * @param accountCount number of accounts committed up to the block
+     * @param totalFees
+     */
+    LedgerSnapshot(int blockNumber, String blockHash, AccountHistory history, int accountCount, long totalFees) {
+        this.blockNumber = blockNumber;
+        this.blockHash = blockHash;
+        this.history = history;
+        this.accountCount = accountCount;
+        this.totalFees = totalFees;
+    }
+
+    /**
+     * Getter method for the number of the last committed block
+     * @return int representing block number or 0 if no block has been committed
+     */
+    public int getBlockNumber() {
+        return blockNumber;
+    }
+
+    /**
+     * Getter method for the hash of the last committed block
+     * @return String or Null if no block has been committed
+     */
+    public String getBlockHash() {
+        return blockHash;
+    }
+
+    /**
+     * Get committed balance of the account
+     * @param address
+     * @return Integer or Null if the account has not been committed
+     */
+    public Integer balance(String address) {
+        return history.getBalance(address, blockNumber);
+    }
+
+    /**
+     * Check if the account has been committed
+     * @param address
+     * @return
+     */
+    public boolean hasAccount(String address) {
+        return balance(address) != null;
+    }
+
+    /**
+     * Get number of committed accounts
+     * @return
+     */
+    public int getAccountCount() {
+        return accountCount;
+    }
+
+    /**
+     * Get fees of all committed transactions
+     * @return
+     */
+    public long getTotalFees() {
+        return totalFees;
+    }
+
+    /**
+     * Get committed balances of all accounts
+     * @return read-only Map of balances by address
+     */
+    public Map<String,Integer> getBalances() {
+        Map<String,Integer> result = balances;
+        if (result == null) {
+            result = Collections.unmodifiableMap(history.getBalances(blockNumber));
+            balances = result;
+        }
+        return result;
+    }
+}
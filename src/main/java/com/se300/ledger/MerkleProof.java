@@ -0,0 +1,129 @@
+package com.se300.ledger;
+
+/**
+ * MerkleProof class implementation holding the sibling path of a leaf in a Merkle tree.
+ * The proof is checked against the root in O(log n) hashes without the rest of the leaves.
+ */
+public class MerkleProof {
+
+    private final MerkleTrees.Mode mode;
+    private final String leaf;
+    private final String pairedLeaf;
+    private final boolean leftLeaf;
+    private final byte[] encodedLeaf;
+    private final byte[][] siblings;
+    private final boolean[] leftNodes;
+
+    /**
+     * MerkleProof Constructor
+     * @param mode hashing scheme of the tree
+     * @param leaf
+     * @param pairedLeaf legacy leaf hashed together with the leaf, Null if there is none
+     * @param leftLeaf true if the leaf comes first in a legacy pair
+     * @param siblings sibling digest at each level from the bottom up, Null for a node without a sibling
+     * @param leftNodes true at each level where the path node is the left child
+     */
+    public MerkleProof(MerkleTrees.Mode mode, String leaf, String pairedLeaf, boolean leftLeaf,
+                       byte[][] siblings, boolean[] leftNodes) {
+        if (siblings.length != leftNodes.length) {
+            throw new IllegalArgumentException("Invalid Merkle Proof");
+        }
+        this.mode = mode;
+        this.leaf = leaf;
+        this.pairedLeaf = pairedLeaf;
+        this.leftLeaf = leftLeaf;
+        this.encodedLeaf = null;
+        this.siblings = siblings.clone();
+        this.leftNodes = leftNodes.clone();
+    }
+
+    /**
+     * MerkleProof Constructor for a leaf of a BINARY tree over encoded leaves
+     * @param encodedLeaf
+     * @param siblings sibling digest at each level from the bottom up, Null for a node without a sibling
+     * @param leftNodes true at each level where the path node is the left child
+     */
+    public MerkleProof(byte[] encodedLeaf, byte[][] siblings, boolean[] leftNodes) {
+        if (siblings.length != leftNodes.length) {
+            throw new IllegalArgumentException("Invalid Merkle Proof");
+        }
+        this.mode = MerkleTrees.Mode.BINARY;
+        this.leaf = null;
+        this.pairedLeaf = null;
+        this.leftLeaf = true;
+        this.encodedLeaf = encodedLeaf.clone();
+        this.siblings = siblings.clone();
+        this.leftNodes = leftNodes.clone();
+    }
+
+    /**
+     * Getter method for the hashing scheme
+     * @return
+     */
+    public MerkleTrees.Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Getter method for the proven leaf
+     * @return String or Null for an encoded leaf
+     */
+    public String getLeaf() {
+        return leaf;
+    }
+
+    /**
+     * Getter method for the encoded leaf
+     * @return copy of the encoded bytes or Null for a string leaf
+     */
+    public byte[] getEncodedLeaf() {
+        return encodedLeaf == null ? null : encodedLeaf.clone();
+    }
+
+    /**
+     * Getter method for the legacy leaf hashed together with the proven leaf
+     * @return String or Null
+     */
+    public String getPairedLeaf() {
+        return pairedLeaf;
+    }
+
+    /**
+     * Get number of levels in the sibling path
+     * @return
+     */
+    public int getLength() {
+        return siblings.length;
+    }
+
+    /**
+     * Recompute root from the leaf and the sibling path
+     * @return hex string of the root
+     */
+    public String computeRoot() {
+        byte[] node = encodedLeaf != null ? MerkleTrees.hashLeaf(encodedLeaf)
+                : MerkleTrees.hashLeaf(mode, leaf, pairedLeaf, leftLeaf);
+        for (int level = 0; level < siblings.length; level++) {
+            byte[] sibling = siblings[level];
+            if (sibling == null) {
+                node = MerkleTrees.hashNode(mode, node, null);
+            } else if (leftNodes[level]) {
+                node = MerkleTrees.hashNode(mode, node, sibling);
+            } else {
+                node = MerkleTrees.hashNode(mode, sibling, node);
+            }
+        }
+        return MerkleTrees.toHex(node);
+    }
+
+    /**
+     * Verify that the leaf of the proof is included in the tree with the given root
+     * @param proof
+     * @param root block hash or Merkle root
+     * @return true if the proof leads to the root
+     */
+    public static boolean verify(MerkleProof proof, String root) {
+        return proof != null && root != null && root.equals(proof.computeRoot());
+    }
+
+}
@@ -1,86 +1,385 @@
 package com.se300.ledger;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * MerkleTree Implementation
  *
+ * Nodes are kept as raw 32 byte SHA-256 digests and hex is only produced for the root.
+ * LEGACY mode reproduces the original string based roots bit for bit, BINARY mode hashes
+ * each leaf once and every internal node over the 64 raw bytes of its children.
+ * Large trees are built on a ForkJoinPool and produce the same root as the sequential build.
+ * Levels of sequentially built trees are retained so that inclusion proofs can be produced.
+ * Trees over encoded leaves, such as transactions encoded by LedgerCodec, are always BINARY.
+ *
  * @author  Nikhil GOYAL
  * @code https://github.com/goyalnikhil02/MerkleTree/blob/master/src/com/example/MerkleTrees.java
  */
 public class MerkleTrees {
 
+    /**
+     * Hashing scheme of the tree
+     */
+    public enum Mode {
+        // Leaf pairs hashed as concatenated strings, upper levels over concatenated hex strings
+        LEGACY,
+        // Leaves hashed individually, upper levels over concatenated raw digests
+        BINARY
+    }
+
+    // Number of bottom level nodes from which trees are built in parallel, see MerkleTreesBenchmark
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    // Digest and hex scratch buffer reused by every tree built on the thread
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    private static final ThreadLocal<byte[]> HEX_BUFFER = ThreadLocal.withInitial(() -> new byte[128]);
+
     // A list of transaction
     List<String> txList;
 
+    // Encoded leaves hashed instead of the transaction strings, Null for string leaves
+    ByteBuffer encodedLeaves;
+
+    // Start of every encoded leaf in the buffer followed by the end of the last one
+    int[] leafOffsets;
+
     // Merkle Root
     String root;
 
+    // Hashing scheme
+    Mode mode;
+
+    // Merkle Root digest
+    byte[] rootBytes;
+
+    // Digest levels from the bottom level up to the root, Null until needed by a parallel tree
+    List<byte[][]> levels;
+
+    // Subtrees with fewer bottom level nodes are hashed sequentially
+    int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
 
     public MerkleTrees(List<String> txList) {
+        this(txList, Mode.LEGACY);
+    }
+
+    public MerkleTrees(List<String> txList, Mode mode) {
         this.txList = txList;
+        this.mode = mode;
         root = "";
     }
 
+    /**
+     * Create BINARY tree over leaves encoded one after another in the buffer. Leaves are hashed
+     * straight from the buffer, which must not change while the tree is used
+     *
+     * @param encodedLeaves buffer holding every leaf
+     * @param leafOffsets start of every leaf followed by the end of the last one
+     * @return MerkleTrees
+     */
+    public static MerkleTrees ofEncodedLeaves(ByteBuffer encodedLeaves, int[] leafOffsets) {
+        MerkleTrees merkleTrees = new MerkleTrees(Collections.emptyList(), Mode.BINARY);
+        merkleTrees.encodedLeaves = encodedLeaves;
+        merkleTrees.leafOffsets = leafOffsets;
+        return merkleTrees;
+    }
+
     public void merkle_tree() {
-        List<String> tempTxList = new ArrayList<String>();
+        if (getLeafCount() == 0) {
+            return;
+        }
 
-        for (int i = 0; i < this.txList.size(); i++) {
-            tempTxList.add(this.txList.get(i));
+        int baseSize = getBaseSize();
+        if (baseSize > parallelThreshold) {
+            this.rootBytes = ForkJoinPool.commonPool().invoke(new SubtreeTask(getHeight(baseSize), 0));
+        } else {
+            this.levels = getLevels();
+            this.rootBytes = levels.get(levels.size() - 1)[0];
         }
 
-        List<String> newTxList = getNewTxList(tempTxList);
-        while (newTxList.size() != 1) {
+        this.root = toHex(rootBytes);
+    }
+
+    /**
+     * Build every level of the tree sequentially
+     *
+     * @return list of levels starting from the bottom level
+     */
+    private List<byte[][]> getLevels() {
+        List<byte[][]> newLevels = new ArrayList<>();
+        byte[][] newTxList = getBaseLevel(0, getBaseSize());
+        newLevels.add(newTxList);
+        while (newTxList.length != 1) {
             newTxList = getNewTxList(newTxList);
+            newLevels.add(newTxList);
+        }
+        return newLevels;
+    }
+
+    /**
+     * Get inclusion proof of the leaf. Trees built in parallel keep no levels and are
+     * rebuilt sequentially on the first call
+     *
+     * @param leafIndex index of the leaf in the transaction list
+     * @return sibling path from the leaf to the root
+     */
+    public MerkleProof getProof(int leafIndex) {
+        Objects.checkIndex(leafIndex, getLeafCount());
+        if (levels == null) {
+            levels = getLevels();
+        }
+
+        // Legacy leaves are hashed in pairs, so the leaf pair is part of the proof
+        String pairedLeaf = null;
+        int position = leafIndex;
+        if (mode == Mode.LEGACY) {
+            int paired = leafIndex ^ 1;
+            pairedLeaf = paired < txList.size() ? txList.get(paired) : null;
+            position = leafIndex / 2;
+        }
+
+        int height = levels.size() - 1;
+        byte[][] siblings = new byte[height][];
+        boolean[] leftNodes = new boolean[height];
+        for (int level = 0; level < height; level++) {
+            byte[][] nodes = levels.get(level);
+            int sibling = position ^ 1;
+            siblings[level] = sibling < nodes.length ? nodes[sibling] : null;
+            leftNodes[level] = (position & 1) == 0;
+            position /= 2;
+        }
+
+        if (encodedLeaves != null) {
+            byte[] leaf = new byte[leafOffsets[leafIndex + 1] - leafOffsets[leafIndex]];
+            getEncodedLeaf(leafIndex).get(leaf);
+            return new MerkleProof(leaf, siblings, leftNodes);
         }
+        return new MerkleProof(mode, txList.get(leafIndex), pairedLeaf, (leafIndex & 1) == 0, siblings, leftNodes);
+    }
+
+    /**
+     * Hash bottom level node holding the leaf
+     *
+     * @param mode
+     * @param leaf
+     * @param pairedLeaf legacy leaf hashed together with the leaf, Null if there is none
+     * @param leftLeaf true if the leaf comes first in a legacy pair
+     * @return digest of the bottom level node
+     */
+    static byte[] hashLeaf(Mode mode, String leaf, String pairedLeaf, boolean leftLeaf) {
+        MessageDigest md = DIGEST.get();
+        if (mode == Mode.BINARY) {
+            return md.digest(leaf.getBytes(StandardCharsets.UTF_8));
+        }
+        String pair = pairedLeaf == null ? leaf : leftLeaf ? leaf + pairedLeaf : pairedLeaf + leaf;
+        return md.digest(pair.getBytes());
+    }
+
+    /**
+     * Hash bottom level node holding the encoded leaf
+     *
+     * @param encodedLeaf
+     * @return digest of the bottom level node
+     */
+    static byte[] hashLeaf(byte[] encodedLeaf) {
+        return DIGEST.get().digest(encodedLeaf);
+    }
+
+    /**
+     * Hash bottom level node holding the encoded leaf without copying it
+     *
+     * @param encodedLeaf
+     * @return digest of the bottom level node
+     */
+    static byte[] hashLeaf(ByteBuffer encodedLeaf) {
+        MessageDigest md = DIGEST.get();
+        md.update(encodedLeaf);
+        return md.digest();
+    }
+
+    private ByteBuffer getEncodedLeaf(int index) {
+        return encodedLeaves.slice(leafOffsets[index], leafOffsets[index + 1] - leafOffsets[index]);
+    }
+
+    private int getLeafCount() {
+        return encodedLeaves != null ? leafOffsets.length - 1 : txList.size();
+    }
 
-        this.root = newTxList.get(0);
+    /**
+     * Number of nodes in the bottom level of digests. Legacy trees start from hashed pairs
+     * of leaves, binary trees from hashed leaves
+     *
+     * @return
+     */
+    private int getBaseSize() {
+        return mode == Mode.LEGACY ? (txList.size() + 1) / 2 : getLeafCount();
     }
 
-    private List<String> getNewTxList(List<String> tempTxList) {
+    /**
+     * Number of levels needed to reduce bottom level to the root
+     *
+     * @param baseSize
+     * @return
+     */
+    private static int getHeight(int baseSize) {
+        return 32 - Integer.numberOfLeadingZeros(baseSize - 1);
+    }
 
-        List<String> newTxList = new ArrayList<String>();
-        int index = 0;
-        while (index < tempTxList.size()) {
-            // left
-            String left = tempTxList.get(index);
-            index++;
+    /**
+     * Hash bottom level nodes in the given range
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    private byte[][] getBaseLevel(int from, int to) {
+        byte[][] newTxList = new byte[to - from][];
 
-            // right
-            String right = "";
-            if (index != tempTxList.size()) {
-                right = tempTxList.get(index);
+        for (int index = from; index < to; index++) {
+            if (encodedLeaves != null) {
+                newTxList[index - from] = hashLeaf(getEncodedLeaf(index));
+            } else if (mode == Mode.BINARY) {
+                newTxList[index - from] = hashLeaf(mode, txList.get(index), null, true);
+            } else {
+                // left + right, right is empty for the last odd leaf
+                int left = index * 2;
+                String right = left + 1 < txList.size() ? txList.get(left + 1) : null;
+                newTxList[index - from] = hashLeaf(mode, txList.get(left), right, true);
             }
+        }
+
+        return newTxList;
+    }
 
-            // sha2 hex value
-            String sha2HexValue = getSHA2HexValue(left + right);
-            newTxList.add(sha2HexValue);
-            index++;
+    private byte[][] getNewTxList(byte[][] tempTxList) {
 
+        byte[][] newTxList = new byte[(tempTxList.length + 1) / 2][];
+        for (int index = 0; index < tempTxList.length; index += 2) {
+            // right is missing for the last odd node
+            byte[] right = index + 1 < tempTxList.length ? tempTxList[index + 1] : null;
+            newTxList[index / 2] = hashNode(mode, tempTxList[index], right);
         }
 
         return newTxList;
     }
 
     /**
-     * Return hex string
+     * Hash internal node from its children
+     *
+     * @param mode
+     * @param left
+     * @param right null for a node without a right child
+     * @return digest of the node
+     */
+    static byte[] hashNode(Mode mode, byte[] left, byte[] right) {
+        MessageDigest md = DIGEST.get();
+
+        if (mode == Mode.BINARY) {
+            md.update(left);
+            if (right != null) {
+                md.update(right);
+            }
+            return md.digest();
+        }
+
+        // Legacy nodes hash the hex strings of their children
+        byte[] hex = HEX_BUFFER.get();
+        int length = appendHex(left, hex, 0);
+        if (right != null) {
+            length = appendHex(right, hex, length);
+        }
+        md.update(hex, 0, length);
+        return md.digest();
+    }
+
+    private static int appendHex(byte[] digest, byte[] buffer, int offset) {
+        for (byte b : digest) {
+            buffer[offset++] = HEX_DIGITS[(b >> 4) & 0xf];
+            buffer[offset++] = HEX_DIGITS[b & 0xf];
+        }
+        return offset;
+    }
+
+    /**
+     * Node of the tree at the given height above the bottom level. A node without a right
+     * sibling is hashed on its own at every level, exactly like in the level by level build
+     */
+    private class SubtreeTask extends RecursiveTask<byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int height;
+        private final int index;
+
+        SubtreeTask(int height, int index) {
+            this.height = height;
+            this.index = index;
+        }
+
+        @Override
+        protected byte[] compute() {
+            int baseSize = getBaseSize();
+            long from = (long) index << height;
+            long to = Math.min(from + (1L << height), baseSize);
+
+            if (to - from <= parallelThreshold) {
+                byte[][] newTxList = getBaseLevel((int) from, (int) to);
+                for (int level = 0; level < height; level++) {
+                    newTxList = getNewTxList(newTxList);
+                }
+                return newTxList[0];
+            }
+
+            SubtreeTask left = new SubtreeTask(height - 1, index * 2);
+            left.fork();
+            byte[] right = null;
+            if (from + (1L << (height - 1)) < baseSize) {
+                right = new SubtreeTask(height - 1, index * 2 + 1).compute();
+            }
+            return hashNode(mode, left.join(), right);
+        }
+    }
+
+    /**
+     * Convert digest to lower case hex string
+     *
+     * @param digest
+     * @return
+     */
+    public static String toHex(byte[] digest) {
+        byte[] hex = new byte[digest.length * 2];
+        appendHex(digest, hex, 0);
+        return new String(hex, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Return hex string. Single shot helper looking up its own digest, tree building
+     * uses the digest reused by the thread instead
      *
      * @param str
      * @return
      */
     public String getSHA2HexValue(String str) {
-        byte[] cipher_byte;
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
             md.update(str.getBytes());
-            cipher_byte = md.digest();
-            StringBuilder sb = new StringBuilder(2 * cipher_byte.length);
-            for (byte b : cipher_byte) {
-                sb.append(String.format("%02x", b & 0xff));
-            }
-            return sb.toString();
+            return toHex(md.digest());
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -97,4 +396,31 @@ public class MerkleTrees {
         return this.root;
     }
 
+    /**
+     * Get Root digest
+     *
+     * @return 32 byte digest or Null if the tree has not been built
+     */
+    public byte[] getRootBytes() {
+        return this.rootBytes;
+    }
+
+    /**
+     * Set number of bottom level nodes from which the tree is built in parallel
+     *
+     * @param parallelThreshold
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = Math.max(1, parallelThreshold);
+    }
+
+    /**
+     * Get hashing scheme
+     *
+     * @return
+     */
+    public Mode getMode() {
+        return this.mode;
+    }
+
 }
@@ -0,0 +1,370 @@
+package com.se300.ledger;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Persistent (immutable) Hash Array Mapped Trie used to share account state between blocks.
+ * Every put returns a new map that shares all untouched nodes with the map it was derived from,
+ * so a new block only pays for the accounts it actually changes.
+ */
+public final class PersistentHashMap<K, V> implements Iterable<Map.Entry<K, V>> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(new Node(0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Get the empty map
+     * @return empty PersistentHashMap
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Get value by key
+     * @param key
+     * @return value or Null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Leaf leaf = root.find(hash(key), key, 0);
+        return leaf == null ? null : (V) leaf.value;
+    }
+
+    /**
+     * Check whether the key is present
+     * @param key
+     * @return true if present
+     */
+    public boolean containsKey(Object key) {
+        return root.find(hash(key), key, 0) != null;
+    }
+
+    /**
+     * Create a new map with the given mapping added or replaced
+     * @param key
+     * @param value
+     * @return new PersistentHashMap sharing unchanged nodes with this one
+     */
+    public PersistentHashMap<K, V> put(K key, V value) {
+        int[] added = new int[1];
+        Node newRoot = root.put(new Leaf(hash(key), key, value), 0, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, size + added[0]);
+    }
+
+    /**
+     * Get number of mappings
+     * @return int representing size of the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if the map is empty
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Visit every mapping without creating an iterator
+     * @param action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    /**
+     * Iterate over all the mappings
+     * @return Iterator over immutable entries
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<>(root);
+    }
+
+    /**
+     * Read-only java.util.Map view of this map
+     * @return Map backed by this PersistentHashMap
+     */
+    public Map<K, V> asMap() {
+        return new AbstractMap<K, V>() {
+            @Override
+            public V get(Object key) {
+                return PersistentHashMap.this.get(key);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return PersistentHashMap.this.containsKey(key);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Set<Entry<K, V>> entrySet() {
+                return new AbstractSet<Entry<K, V>>() {
+                    @Override
+                    public Iterator<Entry<K, V>> iterator() {
+                        return PersistentHashMap.this.iterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = Objects.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Key/Value pair stored in the trie
+     */
+    private static final class Leaf implements Map.Entry<Object, Object> {
+        final int hash;
+        final Object key;
+        final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Bitmap indexed node. Each slot holds either a Leaf, a child Node or, once all hash bits
+     * have been consumed, a Leaf[] of colliding keys.
+     */
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        Leaf find(int hash, Object key, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[Integer.bitCount(bitmap & (bit - 1))];
+            if (slot instanceof Node) {
+                return ((Node) slot).find(hash, key, shift + BITS);
+            }
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.hash == hash && Objects.equals(leaf.key, key) ? leaf : null;
+            }
+            for (Leaf leaf : (Leaf[]) slot) {
+                if (Objects.equals(leaf.key, key)) {
+                    return leaf;
+                }
+            }
+            return null;
+        }
+
+        Node put(Leaf leaf, int shift, int[] added) {
+            int bit = 1 << ((leaf.hash >>> shift) & MASK);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = leaf;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                added[0] = 1;
+                return new Node(bitmap | bit, newSlots);
+            }
+
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Node) {
+                Node child = ((Node) slot).put(leaf, shift + BITS, added);
+                if (child == slot) {
+                    return this;
+                }
+                newSlot = child;
+            } else if (slot instanceof Leaf) {
+                Leaf existing = (Leaf) slot;
+                if (existing.hash == leaf.hash && Objects.equals(existing.key, leaf.key)) {
+                    if (existing.value == leaf.value) {
+                        return this;
+                    }
+                    newSlot = leaf;
+                } else {
+                    newSlot = merge(existing, leaf, shift + BITS);
+                    added[0] = 1;
+                }
+            } else {
+                newSlot = putCollision((Leaf[]) slot, leaf, added);
+            }
+
+            Object[] newSlots = slots.clone();
+            newSlots[index] = newSlot;
+            return new Node(bitmap, newSlots);
+        }
+
+        private static Object merge(Leaf first, Leaf second, int shift) {
+            if (shift >= 32) {
+                return new Leaf[]{first, second};
+            }
+            int firstIndex = (first.hash >>> shift) & MASK;
+            int secondIndex = (second.hash >>> shift) & MASK;
+            if (firstIndex == secondIndex) {
+                return new Node(1 << firstIndex, new Object[]{merge(first, second, shift + BITS)});
+            }
+            Object[] slots = firstIndex < secondIndex
+                    ? new Object[]{first, second} : new Object[]{second, first};
+            return new Node((1 << firstIndex) | (1 << secondIndex), slots);
+        }
+
+        private static Leaf[] putCollision(Leaf[] leaves, Leaf leaf, int[] added) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (Objects.equals(leaves[i].key, leaf.key)) {
+                    Leaf[] newLeaves = leaves.clone();
+                    newLeaves[i] = leaf;
+                    return newLeaves;
+                }
+            }
+            Leaf[] newLeaves = Arrays.copyOf(leaves, leaves.length + 1);
+            newLeaves[leaves.length] = leaf;
+            added[0] = 1;
+            return newLeaves;
+        }
+
+        void forEach(BiConsumer<Object, Object> action) {
+            for (Object slot : slots) {
+                if (slot instanceof Node) {
+                    ((Node) slot).forEach(action);
+                } else if (slot instanceof Leaf) {
+                    action.accept(((Leaf) slot).key, ((Leaf) slot).value);
+                } else {
+                    for (Leaf leaf : (Leaf[]) slot) {
+                        action.accept(leaf.key, leaf.value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Depth first iterator over the trie
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Deque<Object[]> slotStack = new ArrayDeque<>();
+        private final Deque<Integer> indexStack = new ArrayDeque<>();
+        private Leaf[] collisions;
+        private int collisionIndex;
+        private Leaf next;
+
+        EntryIterator(Node root) {
+            slotStack.push(root.slots);
+            indexStack.push(0);
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            if (collisions != null) {
+                if (collisionIndex < collisions.length) {
+                    next = collisions[collisionIndex++];
+                    return;
+                }
+                collisions = null;
+            }
+            while (!slotStack.isEmpty()) {
+                Object[] slots = slotStack.peek();
+                int index = indexStack.pop();
+                if (index == slots.length) {
+                    slotStack.pop();
+                    continue;
+                }
+                indexStack.push(index + 1);
+                Object slot = slots[index];
+                if (slot instanceof Node) {
+                    slotStack.push(((Node) slot).slots);
+                    indexStack.push(0);
+                } else if (slot instanceof Leaf) {
+                    next = (Leaf) slot;
+                    return;
+                } else {
+                    collisions = (Leaf[]) slot;
+                    collisionIndex = 1;
+                    next = collisions[0];
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf current = next;
+            advance();
+            return (Map.Entry<K, V>) (Map.Entry<?, ?>) current;
+        }
+    }
+}
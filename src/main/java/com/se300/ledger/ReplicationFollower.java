@@ -0,0 +1,140 @@
+package com.se300.ledger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * ReplicationFollower class implementation applying the blocks streamed by a ReplicationLeader to
+ * a Ledger of its own, which then serves reads such as balances, blocks and transactions without
+ * competing with the writer of the leader. On connect the follower asks for the block following its
+ * last committed block, so a follower restarted from a snapshot or block store only catches up on the
+ * blocks it is missing. Blocks are applied through Ledger.applyBlock, which checks every block hash.
+ */
+public class ReplicationFollower implements AutoCloseable {
+
+    private final Ledger ledger;
+    private final Socket socket;
+    private final Thread receiver;
+    private volatile LedgerException failure;
+    private volatile boolean closed;
+
+    /**
+     * ReplicationFollower Constructor, connecting to the leader and catching up with it
+     * @param ledger Ledger with the same seed as the leader, not processing transactions of its own
+     * @param host host of the leader
+     * @param port port of the leader
+     * @throws IOException
+     */
+    public ReplicationFollower(Ledger ledger, String host, int port) throws IOException {
+        this.ledger = ledger;
+        this.socket = new Socket(host, port);
+
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(ledger.getNumberOfBlocks() + 1);
+        out.flush();
+
+        this.receiver = new Thread(this::receive, "replication-follower-" + ledger.getName());
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Getter method for the Ledger the blocks are applied to
+     * @return
+     */
+    public Ledger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Get reason replication has stopped
+     * @return LedgerException or Null while replicating or once closed
+     */
+    public LedgerException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Check if blocks are still being received from the leader
+     * @return
+     */
+    public boolean isConnected() {
+        return receiver.isAlive();
+    }
+
+    /**
+     * Wait until the block has been applied
+     * @param blockNumber
+     * @param timeoutMillis
+     * @return true if the block has been applied, false if timed out or replication has stopped
+     * @throws InterruptedException
+     */
+    public boolean awaitBlock(int blockNumber, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            while (ledger.getNumberOfBlocks() < blockNumber && receiver.isAlive()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                wait(remaining);
+            }
+        }
+        return ledger.getNumberOfBlocks() >= blockNumber;
+    }
+
+    private void receive() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                if (!LedgerCodec.isIntact(bytes, checksum)) {
+                    throw new LedgerException("Replicate Block", "Block Is Corrupt");
+                }
+
+                ByteBuffer payload = ByteBuffer.wrap(bytes);
+                LedgerCodec.checkVersion(payload);
+                ledger.applyBlock(LedgerCodec.getBlock(payload, null));
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                failure = new LedgerException("Replicate Block", "Connection To Leader Lost");
+            }
+        } catch (IllegalStateException e) {
+            failure = new LedgerException("Replicate Block", e.getMessage());
+        } catch (LedgerException e) {
+            failure = e;
+        } finally {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Disconnect from the leader, the Ledger keeps the blocks applied so far
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //Disconnected anyway
+        }
+        try {
+            receiver.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.se300.ledger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ReplicationLeader class implementation streaming the committed blocks of a Ledger to followers
+ * over TCP on the loopback address. A follower connects and sends the number of the first block it
+ * is missing, the leader then sends every committed block from there on, catching up from memory or
+ * the block store, and keeps sending blocks as they are committed. Every block is a record framed by
+ * LedgerCodec holding the block header with its hash, the transactions and the changed accounts.
+ * Every follower is served by its own thread, so a slow follower does not hold up the Ledger.
+ */
+public class ReplicationLeader implements AutoCloseable {
+
+    private final Ledger ledger;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private final LongAdder sentBlocks = new LongAdder();
+
+    // Follower threads wait on the monitor for the next block to be committed
+    private final Object commits = new Object();
+    private final BlockListener listener = block -> {
+        synchronized (commits) {
+            commits.notifyAll();
+        }
+    };
+    private volatile boolean closed;
+
+    /**
+     * ReplicationLeader Constructor, accepting followers on the loopback address
+     * @param ledger Ledger whose blocks are replicated
+     * @param port port to listen on, 0 to pick a free port
+     * @throws IOException
+     */
+    public ReplicationLeader(Ledger ledger, int port) throws IOException {
+        this.ledger = ledger;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        ledger.addBlockListener(listener);
+
+        Thread acceptor = new Thread(this::accept, "replication-leader-" + ledger.getName());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Get port the leader listens on
+     * @return
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Get number of connected followers
+     * @return
+     */
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    /**
+     * Get number of blocks sent to all followers
+     * @return
+     */
+    public long getSentBlockCount() {
+        return sentBlocks.sum();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                followers.add(socket);
+                Thread sender = new Thread(() -> stream(socket), "replication-follower-" + socket.getPort());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                //Server socket has been closed
+                return;
+            }
+        }
+    }
+
+    /**
+     * Send committed blocks to the follower, starting with the block it asked for
+     * @param socket
+     */
+    private void stream(Socket socket) {
+        LedgerCodec codec = new LedgerCodec(4096);
+        try (socket) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            int nextBlock = Math.max(in.readInt(), 1);
+
+            while (!closed) {
+                if (nextBlock > ledger.getNumberOfBlocks()) {
+                    out.flush();
+                    synchronized (commits) {
+                        while (!closed && nextBlock > ledger.getNumberOfBlocks()) {
+                            commits.wait();
+                        }
+                    }
+                    continue;
+                }
+
+                ByteBuffer record = codec.startRecord().putBlock(ledger.getBlock(nextBlock)).finishRecord();
+                out.write(record.array(), record.arrayOffset() + record.position(), record.remaining());
+                sentBlocks.increment();
+                nextBlock++;
+            }
+        } catch (IOException | LedgerException e) {
+            //Follower disconnected or asked for a block no longer available
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    /**
+     * Stop accepting followers and disconnect the connected ones
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ledger.removeBlockListener(listener);
+        synchronized (commits) {
+            commits.notifyAll();
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            //Nothing is accepted anyway
+        }
+        for (Socket socket : followers) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //Follower is disconnected anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.se300.ledger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ShardedLedger class implementation partitioning accounts by address hash over independent
+ * Ledger shards, each with its own block chain, Merkle roots and sealing, so that transfers on
+ * different shards are processed in parallel.
+ *
+ * A transfer between accounts of different shards runs in two phases. The payer shard debits the
+ * payer into its escrow account, charging the fee, and the receiver shard then credits the receiver
+ * from its reserve account. Once credited, the escrow is settled into the reserve of the payer shard.
+ * If the credit fails the escrow is refunded to the payer. A refund or settlement that fails is kept
+ * and retried by validate, so the outcome reported for the transfer stays the outcome of its credit.
+ * Legs carry the transfer id followed by the leg separator, which client transaction ids may not
+ * contain, and transaction ids are unique across all shards. The master account lives on the shard
+ * its address hashes to, the funds of the masters of the other shards are moved into their reserves.
+ */
+public class ShardedLedger {
+
+    // Accounts used by the transfer protocol, addresses with this prefix cannot be created
+    static final String RESERVED_PREFIX = "~";
+    static final String ESCROW = RESERVED_PREFIX + "escrow";
+    static final String RESERVE = RESERVED_PREFIX + "reserve";
+    private static final String MASTER = "master";
+    // Separates the transfer id from the name of its leg
+    static final String LEG_SEPARATOR = "#";
+
+    private final String name;
+    private final Ledger[] shards;
+
+    // Transfers share the protocol lock, global validation takes it exclusively
+    private final ReentrantReadWriteLock protocolLock = new ReentrantReadWriteLock();
+
+    // Shard of the payer of every processed transaction id
+    private final Map<String,Integer> transactionShards = new ConcurrentHashMap<>();
+
+    // Refunds and settlements that failed, retried by validate
+    private final Queue<PendingLeg> pendingLegs = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder crossShardTransfers = new LongAdder();
+    private final LongAdder refundedTransfers = new LongAdder();
+
+    /**
+     * ShardedLedger Constructor
+     * @param name
+     * @param description
+     * @param seed
+     * @param shardCount number of shards accounts are partitioned over
+     */
+    public ShardedLedger(String name, String description, String seed, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Invalid Shard Count");
+        }
+        this.name = name;
+        this.shards = new Ledger[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Ledger(name + "-" + i, description, seed);
+            try {
+                shards[i].createAccount(ESCROW);
+                shards[i].createAccount(RESERVE);
+                if (i != shardOf(MASTER)) {
+                    shards[i].processTransferLeg(new Transaction(RESERVE, Integer.MAX_VALUE, 0, "reserve",
+                            placeholder(MASTER), placeholder(RESERVE)));
+                }
+            } catch (LedgerException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Getter method for the name of the Ledger
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get number of shards
+     * @return
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Get shard by index
+     * @param index
+     * @return Ledger holding the accounts of the shard
+     */
+    public Ledger getShard(int index) {
+        return shards[index];
+    }
+
+    /**
+     * Get index of the shard holding the account
+     * @param address
+     * @return
+     */
+    public int shardOf(String address) {
+        int hash = Objects.hashCode(address);
+        return ((hash ^ (hash >>> 16)) & 0x7fffffff) % shards.length;
+    }
+
+    /**
+     * Create account on its shard
+     * @param address
+     * @return Account
+     * @throws LedgerException
+     */
+    public Account createAccount(String address) throws LedgerException {
+        if (address != null && address.startsWith(RESERVED_PREFIX)) {
+            throw new LedgerException("Create Account", "Address Is Reserved");
+        }
+        return shards[shardOf(address)].createAccount(address);
+    }
+
+    /**
+     * Process transaction on the shard of the payer, or with the two phase protocol
+     * when the receiver belongs to another shard
+     * @param transaction
+     * @return String representing transaction id
+     * @throws LedgerException
+     */
+    public String processTransaction(Transaction transaction) throws LedgerException {
+
+        String transactionId = transaction.getTransactionId();
+        String payer = transaction.getPayer().getAddress();
+        String receiver = transaction.getReceiver().getAddress();
+        if (isReserved(payer) || isReserved(receiver)) {
+            throw new LedgerException("Process Transaction", "Address Is Reserved");
+        }
+        if (transactionId == null || isReserved(transactionId) || transactionId.contains(LEG_SEPARATOR)) {
+            throw new LedgerException("Process Transaction", "Transaction Id Is Reserved");
+        }
+
+        int payerShard = shardOf(payer);
+        int receiverShard = shardOf(receiver);
+
+        //Claim the id across all shards before any shard applies it
+        if (transactionShards.putIfAbsent(transactionId, payerShard) != null) {
+            throw new LedgerException("Process Transaction", "Transaction Id Must Be Unique");
+        }
+
+        protocolLock.readLock().lock();
+        try {
+            if (payerShard == receiverShard) {
+                try {
+                    return shards[payerShard].processTransaction(transaction);
+                } catch (LedgerException e) {
+                    transactionShards.remove(transactionId);
+                    throw e;
+                }
+            }
+            return transfer(transaction, shards[payerShard], shards[receiverShard]);
+        } finally {
+            protocolLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Move funds between shards. Requires protocol lock to be held shared
+     * @param transaction
+     * @param payerShard
+     * @param receiverShard
+     * @return String representing transaction id
+     * @throws LedgerException
+     */
+    private String transfer(Transaction transaction, Ledger payerShard, Ledger receiverShard)
+            throws LedgerException {
+
+        String transactionId = transaction.getTransactionId();
+        Account receiver = receiverShard.getUncommittedBlock().getAccount(transaction.getReceiver().getAddress());
+        if (receiver == null) {
+            transactionShards.remove(transactionId);
+            throw new LedgerException("Process Transaction", "Receiver Does Not Exist");
+        }
+
+        //Phase one: debit the payer into escrow, charging the fee
+        try {
+            payerShard.processTransaction(new Transaction(transactionId, transaction.getAmount(),
+                    transaction.getFee(), transaction.getNote(), transaction.getPayer(), placeholder(ESCROW)));
+        } catch (LedgerException e) {
+            transactionShards.remove(transactionId);
+            throw e;
+        }
+
+        //Phase two: credit the receiver from the reserve of its shard
+        try {
+            receiverShard.processTransferLeg(new Transaction(transactionId + LEG_SEPARATOR + "credit",
+                    transaction.getAmount(), 0, transaction.getNote(), placeholder(RESERVE), receiver));
+        } catch (LedgerException e) {
+            //Compensate by returning the escrowed amount, the fee stays charged
+            PendingLeg refund = new PendingLeg(payerShard, transactionId + LEG_SEPARATOR + "refund",
+                    transaction.getAmount(), transaction.getNote(), transaction.getPayer().getAddress());
+            try {
+                refund.process();
+            } catch (LedgerException refundFailure) {
+                pendingLegs.add(refund);
+                e.addSuppressed(refundFailure);
+            }
+            refundedTransfers.increment();
+            throw e;
+        }
+
+        //Escrow backs the credited amount from now on, release it to the reserve of the payer shard
+        PendingLeg settlement = new PendingLeg(payerShard, transactionId + LEG_SEPARATOR + "settle",
+                transaction.getAmount(), transaction.getNote(), RESERVE);
+        try {
+            settlement.process();
+        } catch (LedgerException e) {
+            //Receiver has been credited, the transfer has completed
+            pendingLegs.add(settlement);
+        }
+        crossShardTransfers.increment();
+        return transactionId;
+    }
+
+    /**
+     * Retry refunds and settlements that failed. Requires protocol lock to be held exclusively
+     */
+    private void processPendingLegs() {
+        for (int i = pendingLegs.size(); i > 0; i--) {
+            PendingLeg leg = pendingLegs.poll();
+            try {
+                leg.process();
+            } catch (LedgerException e) {
+                pendingLegs.add(leg);
+            }
+        }
+    }
+
+    /**
+     * Leg moving escrowed funds out of the escrow of the payer shard
+     */
+    private static final class PendingLeg {
+
+        private final Ledger shard;
+        private final String transactionId;
+        private final int amount;
+        private final String note;
+        private final String receiver;
+
+        PendingLeg(Ledger shard, String transactionId, int amount, String note, String receiver) {
+            this.shard = shard;
+            this.transactionId = transactionId;
+            this.amount = amount;
+            this.note = note;
+            this.receiver = receiver;
+        }
+
+        void process() throws LedgerException {
+            shard.processTransferLeg(new Transaction(transactionId, amount, 0, note,
+                    placeholder(ESCROW), placeholder(receiver)));
+        }
+    }
+
+    // Accounts are bound to the accounts of the shard by address
+    private static Account placeholder(String address) {
+        return new Account(address, 0);
+    }
+
+    private static boolean isReserved(String address) {
+        return address != null && address.startsWith(RESERVED_PREFIX);
+    }
+
+    /**
+     * Get Account balance by address from its shard
+     * @param address
+     * @return Integer representing balance of the Account
+     * @throws LedgerException
+     */
+    public Integer getAccountBalance(String address) throws LedgerException {
+        if (isReserved(address)) {
+            throw new LedgerException("Get Account Balance", "Account Does Not Exist");
+        }
+        return shards[shardOf(address)].getAccountBalance(address);
+    }
+
+    /**
+     * Get committed balances of the accounts of every shard, without protocol accounts
+     * and reserves of the shards
+     * @return Map representing Accounts and balances
+     */
+    public Map<String,Integer> getAccountBalances() {
+        Map<String,Integer> balances = new HashMap<>();
+        for (int i = 0; i < shards.length; i++) {
+            Map<String,Integer> shardBalances = shards[i].getAccountBalances();
+            if (shardBalances == null) {
+                continue;
+            }
+            for (Map.Entry<String,Integer> entry : shardBalances.entrySet()) {
+                String address = entry.getKey();
+                if (!isReserved(address) && shardOf(address) == i) {
+                    balances.put(address, entry.getValue());
+                }
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * Get Transaction by id from the shard of its payer, or a leg of a transfer from any shard
+     * @param transactionId
+     * @return Transaction or Null
+     */
+    public Transaction getTransaction(String transactionId) {
+        Integer shardIndex = transactionShards.get(transactionId);
+        if (shardIndex != null) {
+            return shards[shardIndex].getTransaction(transactionId);
+        }
+        for (Ledger shard : shards) {
+            Transaction transaction = shard.getTransaction(transactionId);
+            if (transaction != null) {
+                return transaction;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get number of completed cross-shard transfers
+     * @return
+     */
+    public long getCrossShardTransferCount() {
+        return crossShardTransfers.sum();
+    }
+
+    /**
+     * Get number of cross-shard transfers refunded after the credit failed
+     * @return
+     */
+    public long getRefundedTransferCount() {
+        return refundedTransfers.sum();
+    }
+
+    /**
+     * Get number of refunds and settlements that failed and wait to be retried by validate
+     * @return
+     */
+    public int getPendingLegCount() {
+        return pendingLegs.size();
+    }
+
+    /**
+     * Enable or disable sealing blocks on a background thread of every shard
+     * @param asynchronous
+     */
+    public void setAsynchronousSealing(boolean asynchronous) {
+        for (Ledger shard : shards) {
+            shard.setAsynchronousSealing(asynchronous);
+        }
+    }
+
+    /**
+     * Validate every shard and the supply moved between shards.
+     * Every shard has to pass its own validation, which checks its balances and fees against its
+     * supply. No funds may be left in escrow, and as every completed transfer moves funds from one
+     * reserve to another, the reserves of all shards have to add up to what they started with.
+     * Refunds and settlements that failed are retried first
+     * @throws LedgerException
+     */
+    public void validate() throws LedgerException {
+
+        protocolLock.writeLock().lock();
+        try {
+            processPendingLegs();
+
+            long reserves = 0;
+            for (Ledger shard : shards) {
+                shard.awaitSealing();
+                Block block = shard.getUncommittedBlock();
+                if (block.getAccount(ESCROW).getBalance() != 0) {
+                    throw new LedgerException("Validate", "Escrow Is Not Settled: " + shard.getName());
+                }
+                reserves += block.getAccount(RESERVE).getBalance();
+
+                if (shard.getNumberOfBlocks() > 0) {
+                    shard.validate();
+                }
+            }
+
+            if (reserves != (long) Integer.MAX_VALUE * (shards.length - 1)) {
+                throw new LedgerException("Validate", "Total Supply Does Not Add Up");
+            }
+        } finally {
+            protocolLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reset every shard and stop its background threads
+     */
+    public void shutdown() {
+        for (Ledger shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.se300.ledger;
+
+/**
+ * TransactionResult class implementation representing outcome of a transaction processed in a batch
+ */
+public class TransactionResult {
+
+    private final String transactionId;
+    private final LedgerException exception;
+
+    /**
+     * TransactionResult Constructor
+     * @param transactionId
+     * @param exception Null if the transaction has been processed
+     */
+    public TransactionResult(String transactionId, LedgerException exception) {
+        this.transactionId = transactionId;
+        this.exception = exception;
+    }
+
+    /**
+     * Getter method for transaction id
+     * @return
+     */
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * Check if the transaction has been processed
+     * @return
+     */
+    public boolean isProcessed() {
+        return exception == null;
+    }
+
+    /**
+     * Getter method for the reason transaction has been rejected
+     * @return LedgerException or Null
+     */
+    public LedgerException getException() {
+        return exception;
+    }
+}
@@ -0,0 +1,407 @@
+package com.se300.ledger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WriteAheadLog class implementation recording accepted ledger operations to an append only file.
+ * Each record is framed by LedgerCodec as its length, a CRC32 checksum, the codec version, its type
+ * and its payload, so a torn record at the end of the file is detected and dropped on replay. With
+ * SYNC durability concurrent submitters share fsyncs: one of them forces the file for every record
+ * written so far while the others wait for it, rather than each forcing the file on its own.
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    /**
+     * Point at which a record is considered durable
+     */
+    public enum Durability {
+        // Records reach the file, fsync is left to the operating system
+        NONE,
+        // Records are forced to disk by a background thread every ASYNC_FLUSH_MILLIS
+        ASYNC,
+        // Submitters wait until their records are forced to disk
+        SYNC
+    }
+
+    public static final long ASYNC_FLUSH_MILLIS = 10;
+
+    private static final byte CREATE_ACCOUNT = 1;
+    private static final byte TRANSACTION = 2;
+    private static final byte SEAL_BLOCK = 3;
+
+    /**
+     * Callback receiving records in the order they have been written
+     */
+    public interface ReplayHandler {
+
+        /**
+         * Replay account creation
+         * @param address
+         * @throws LedgerException
+         */
+        void createAccount(String address) throws LedgerException;
+
+        /**
+         * Replay accepted transaction
+         * @param transactionId
+         * @param amount
+         * @param fee
+         * @param note
+         * @param payer address of the payer
+         * @param receiver address of the receiver
+         * @throws LedgerException
+         */
+        void processTransaction(String transactionId, int amount, int fee, String note,
+                                String payer, String receiver) throws LedgerException;
+
+        /**
+         * Replay sealing of the block
+         * @param blockNumber
+         * @param policy seal policy the block has been sealed under
+         * @throws LedgerException
+         */
+        void sealBlock(int blockNumber, BlockSealPolicy policy) throws LedgerException;
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Durability durability;
+    private final LedgerCodec codec = new LedgerCodec(1024);
+
+    // Position after the last written record, guarded by this
+    private long writtenPosition;
+    // Position after the last block seal record, guarded by this
+    private long sealPosition;
+
+    // Position up to which the file has been forced, guarded by syncMonitor
+    private final Object syncMonitor = new Object();
+    private long durablePosition;
+    private boolean syncing;
+
+    // First write or fsync failure, every later call fails with it
+    private volatile IOException failure;
+
+    private ScheduledExecutorService flusher;
+
+    /**
+     * WriteAheadLog Constructor opening or creating the log file
+     * @param path
+     * @param durability
+     * @throws IOException
+     */
+    public WriteAheadLog(Path path, Durability durability) throws IOException {
+        this.path = path;
+        this.durability = durability;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.writtenPosition = channel.size();
+        this.durablePosition = writtenPosition;
+        channel.position(writtenPosition);
+
+        if (durability == Durability.ASYNC) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ledger-wal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, ASYNC_FLUSH_MILLIS, ASYNC_FLUSH_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Getter method for the log file
+     * @return
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Getter method for the durability level
+     * @return
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Read every complete record from the start of the file. A torn or corrupt record ends
+     * the log, it is truncated away so that new records follow the last good one
+     * @param handler
+     * @return number of records replayed
+     * @throws IOException
+     * @throws LedgerException
+     */
+    public int replay(ReplayHandler handler) throws IOException, LedgerException {
+        return replay(0, handler);
+    }
+
+    /**
+     * Read every complete record following the given position, which has to be a record boundary
+     * such as the position recorded by a snapshot
+     * @param from
+     * @param handler
+     * @return number of records replayed
+     * @throws IOException
+     * @throws LedgerException
+     */
+    public synchronized int replay(long from, ReplayHandler handler) throws IOException, LedgerException {
+
+        if (from < 0 || from > channel.size()) {
+            throw new LedgerException("Replay Write Ahead Log", "Log Does Not Reach Position " + from);
+        }
+
+        long position = from;
+        sealPosition = from;
+        int records = 0;
+        InputStream stream = new BufferedInputStream(Channels.newInputStream(channel.position(from)), 1 << 16);
+        DataInputStream input = new DataInputStream(stream);
+
+        while (true) {
+            byte[] record;
+            try {
+                int length = input.readInt();
+                int checksum = input.readInt();
+                if (length < 1 || length > channel.size() - position - LedgerCodec.HEADER_SIZE) {
+                    break;
+                }
+                record = new byte[length];
+                input.readFully(record);
+                if (!LedgerCodec.isIntact(record, checksum)) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+
+            boolean seal = dispatch(ByteBuffer.wrap(record), handler);
+            position += LedgerCodec.HEADER_SIZE + record.length;
+            if (seal) {
+                sealPosition = position;
+            }
+            records++;
+        }
+
+        channel.truncate(position);
+        channel.position(position);
+        writtenPosition = position;
+        synchronized (syncMonitor) {
+            durablePosition = position;
+        }
+        return records;
+    }
+
+    private boolean dispatch(ByteBuffer record, ReplayHandler handler) throws LedgerException {
+        try {
+            LedgerCodec.checkVersion(record);
+        } catch (IllegalStateException e) {
+            throw new LedgerException("Replay Write Ahead Log", e.getMessage());
+        }
+        byte type = record.get();
+        switch (type) {
+            case CREATE_ACCOUNT:
+                handler.createAccount(LedgerCodec.getString(record));
+                return false;
+            case TRANSACTION:
+                Transaction transaction = LedgerCodec.getTransaction(record);
+                handler.processTransaction(transaction.getTransactionId(), transaction.getAmount(),
+                        transaction.getFee(), transaction.getNote(), transaction.getPayer().getAddress(),
+                        transaction.getReceiver().getAddress());
+                return false;
+            case SEAL_BLOCK:
+                int blockNumber = record.getInt();
+                handler.sealBlock(blockNumber, LedgerCodec.getSealPolicy(record));
+                return true;
+            default:
+                throw new LedgerException("Replay Write Ahead Log", "Unknown Record Type " + type);
+        }
+    }
+
+    /**
+     * Append account creation record
+     * @param address
+     * @throws IOException
+     */
+    public synchronized void appendCreateAccount(String address) throws IOException {
+        checkFailure();
+        write(codec.startRecord().putByte(CREATE_ACCOUNT).putString(address).finishRecord());
+    }
+
+    /**
+     * Append accepted transaction record
+     * @param transaction
+     * @throws IOException
+     */
+    public synchronized void appendTransaction(Transaction transaction) throws IOException {
+        checkFailure();
+        write(codec.startRecord().putByte(TRANSACTION).putTransaction(transaction).finishRecord());
+    }
+
+    /**
+     * Append block seal record
+     * @param blockNumber
+     * @param policy seal policy the block is sealed under
+     * @return long representing log position following the record
+     * @throws IOException
+     */
+    public synchronized long appendSealBlock(int blockNumber, BlockSealPolicy policy) throws IOException {
+        checkFailure();
+        write(codec.startRecord().putByte(SEAL_BLOCK).putInt(blockNumber).putSealPolicy(policy).finishRecord());
+        sealPosition = writtenPosition;
+        return sealPosition;
+    }
+
+    /**
+     * Get log position following the last block seal record. Records after it belong to the
+     * block that has not been sealed yet
+     * @return
+     */
+    public synchronized long getSealPosition() {
+        return sealPosition;
+    }
+
+    /**
+     * Make every record appended so far durable according to the durability level.
+     * With SYNC durability one caller forces the file on behalf of everybody waiting
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        checkFailure();
+        if (durability == Durability.SYNC) {
+            long position;
+            synchronized (this) {
+                position = writtenPosition;
+            }
+            sync(position);
+        }
+    }
+
+    private void sync(long position) throws IOException {
+        while (true) {
+            checkFailure();
+            synchronized (syncMonitor) {
+                while (syncing && durablePosition < position) {
+                    try {
+                        syncMonitor.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted While Waiting For Write Ahead Log", e);
+                    }
+                }
+                if (durablePosition >= position) {
+                    return;
+                }
+                syncing = true;
+            }
+
+            //Leader forces every record written so far, including the ones of waiting submitters
+            try {
+                force();
+            } finally {
+                synchronized (syncMonitor) {
+                    syncing = false;
+                    syncMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void force() {
+        long position;
+        synchronized (this) {
+            position = writtenPosition;
+        }
+        try {
+            channel.force(false);
+            synchronized (syncMonitor) {
+                durablePosition = Math.max(durablePosition, position);
+            }
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        synchronized (syncMonitor) {
+            if (syncing) {
+                return;
+            }
+            syncing = true;
+        }
+        try {
+            force();
+        } finally {
+            synchronized (syncMonitor) {
+                syncing = false;
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Force remaining records to disk and close the file
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (channel.isOpen()) {
+                if (failure == null) {
+                    channel.force(false);
+                }
+                channel.close();
+            }
+        }
+    }
+
+    private void write(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+        writtenPosition += length;
+    }
+
+    /**
+     * Check whether a write or fsync has failed. The log rejects every append afterwards
+     * @return
+     */
+    public boolean hasFailed() {
+        return failure != null;
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw new IOException("Write Ahead Log Has Failed", e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.se300.ledger.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.se300.ledger.Account;
+import com.se300.ledger.Ledger;
+import com.se300.ledger.Transaction;
+
+/**
+ * Benchmark measuring audit time as the chain grows, to check that it scales linearly with
+ * the number of blocks. Not part of the regular build, run with: mvn test -Dtest=AuditBenchmark
+ */
+public class AuditBenchmark {
+
+    private static final int ROUNDS = 10;
+    private static final int BATCH = 1000;
+
+    @Test
+    public void benchmarkScaling() throws Exception {
+
+        Ledger ledger = Ledger.getInstance("test", "test ledger 2023", "chapman");
+        ledger.reset();
+        ledger.createAccount("mary");
+        Account master = ledger.getUncommittedBlock().getAccount("master");
+        Account mary = ledger.getUncommittedBlock().getAccount("mary");
+
+        System.out.printf("%10s %12s %14s%n", "blocks", "audit(us)", "per block(us)");
+
+        int transactions = 0;
+        for (int blocks = 1000; blocks <= 16000; blocks *= 2) {
+            while (ledger.getNumberOfBlocks() < blocks) {
+                List<Transaction> batch = new ArrayList<>();
+                for (int i = 0; i < BATCH; i++, transactions++) {
+                    batch.add(new Transaction("audit" + transactions, 1, 10, "audit", master, mary));
+                }
+                ledger.processTransactions(batch);
+            }
+
+            assertTrue(ledger.audit().isEmpty());
+            long time = time(ledger);
+            int committed = ledger.getNumberOfBlocks();
+            System.out.printf("%10d %12d %14.2f%n", committed, time / 1000, time / 1000.0 / committed);
+        }
+        ledger.reset();
+    }
+
+    private static long time(Ledger ledger) {
+        // Warm up before measuring
+        for (int i = 0; i < ROUNDS; i++) {
+            ledger.audit();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            ledger.audit();
+        }
+        return (System.nanoTime() - start) / ROUNDS;
+    }
+}
@@ -0,0 +1,85 @@
+package com.se300.ledger.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import com.se300.ledger.command.CommandTokenizer;
+
+/**
+ * Benchmark comparing tokenizing the ledger script with the command pattern and with CommandTokenizer.
+ * Not part of the regular build, run with: mvn test -Dtest=CommandTokenizerBenchmark
+ */
+public class CommandTokenizerBenchmark {
+
+    private static final int ROUNDS = 20000;
+
+    @Test
+    public void benchmarkTokenizer() throws Exception {
+
+        Path path = new File(Objects.requireNonNull(getClass().getResource("/ledger.script")).getFile()).toPath();
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(path)) {
+            if (!line.trim().startsWith("#") && line.trim().length() != 0) {
+                lines.add(line);
+            }
+        }
+
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        assertEquals(pattern(lines), tokenizer(lines, tokenizer));
+
+        long patternTime = time(() -> pattern(lines));
+        long tokenizerTime = time(() -> tokenizer(lines, tokenizer));
+
+        System.out.printf("%10s %16s %16s %8s%n", "lines", "pattern(ns)", "tokenizer(ns)", "speedup");
+        System.out.printf("%10d %16d %16d %8.2f%n", lines.size(), patternTime / lines.size(),
+                tokenizerTime / lines.size(), (double) patternTime / tokenizerTime);
+    }
+
+    // Tokens as built by the command pattern, summed up by length
+    private static long pattern(List<String> lines) {
+        long length = 0;
+        for (String line : lines) {
+            List<String> tokens = new ArrayList<>();
+            Matcher matcher = Pattern.compile("([^\"]\\S*|\".+?\")\\s*").matcher(line);
+            while (matcher.find())
+                tokens.add(matcher.group(1).replace("\"", ""));
+            for (String token : tokens) {
+                length += token.length();
+            }
+        }
+        return length;
+    }
+
+    private static long tokenizer(List<String> lines, CommandTokenizer tokenizer) {
+        long length = 0;
+        for (String line : lines) {
+            int count = tokenizer.tokenize(line);
+            for (int i = 0; i < count; i++) {
+                length += tokenizer.getToken(i).length();
+            }
+        }
+        return length;
+    }
+
+    private static long time(Runnable task) {
+        // Warm up before measuring
+        for (int i = 0; i < ROUNDS; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / ROUNDS;
+    }
+}
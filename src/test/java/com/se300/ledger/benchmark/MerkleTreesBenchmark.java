@@ -0,0 +1,63 @@
+package com.se300.ledger.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.se300.ledger.MerkleTrees;
+
+/**
+ * Benchmark comparing sequential and fork/join Merkle tree construction.
+ * Not part of the regular build, run with: mvn test -Dtest=MerkleTreesBenchmark
+ */
+public class MerkleTreesBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    @Test
+    public void benchmarkCrossover() {
+
+        System.out.printf("%10s %16s %16s %8s%n", "leaves", "sequential(us)", "parallel(us)", "speedup");
+
+        for (int size = 16; size <= 1 << 17; size *= 2) {
+            List<String> txList = new ArrayList<>();
+            txList.add("chapman");
+            for (int i = 1; i < size; i++) {
+                txList.add("Transaction Id: " + i + ", Amount: 1000, Fee: 10, Note: benchmark"
+                        + ", Payer: master, Receiver: account" + i);
+            }
+
+            String sequentialRoot = build(txList, Integer.MAX_VALUE);
+            String parallelRoot = build(txList, 16);
+            assertEquals(sequentialRoot, parallelRoot);
+
+            long sequential = time(txList, Integer.MAX_VALUE);
+            long parallel = time(txList, 16);
+
+            System.out.printf("%10d %16d %16d %8.2f%n", size, sequential / 1000, parallel / 1000,
+                    (double) sequential / parallel);
+        }
+    }
+
+    private static String build(List<String> txList, int parallelThreshold) {
+        MerkleTrees merkleTrees = new MerkleTrees(txList);
+        merkleTrees.setParallelThreshold(parallelThreshold);
+        merkleTrees.merkle_tree();
+        return merkleTrees.getRoot();
+    }
+
+    private static long time(List<String> txList, int parallelThreshold) {
+        // Warm up before measuring
+        for (int i = 0; i < ROUNDS; i++) {
+            build(txList, parallelThreshold);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            build(txList, parallelThreshold);
+        }
+        return (System.nanoTime() - start) / ROUNDS;
+    }
+}
@@ -0,0 +1,79 @@
+package com.se300.ledger.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.se300.ledger.Account;
+import com.se300.ledger.Ledger;
+import com.se300.ledger.Transaction;
+import com.se300.ledger.WriteAheadLog;
+
+/**
+ * Benchmark comparing transaction throughput in memory and with each write ahead log durability.
+ * Not part of the regular build, run with: mvn test -Dtest=WriteAheadLogBenchmark
+ */
+public class WriteAheadLogBenchmark {
+
+    private static final int THREADS = 8;
+    private static final int TRANSFERS = 2000;
+
+    @Test
+    public void benchmarkDurability() throws Exception {
+
+        Ledger ledger = Ledger.getInstance("test", "test ledger 2023", "chapman");
+        System.out.printf("%10s %16s%n", "durability", "transactions/s");
+
+        System.out.printf("%10s %16d%n", "MEMORY", run(ledger, null, null));
+        for (WriteAheadLog.Durability durability : WriteAheadLog.Durability.values()) {
+            Path directory = Files.createTempDirectory("ledger-wal");
+            Path logFile = directory.resolve("ledger.wal");
+            System.out.printf("%10s %16d%n", durability, run(ledger, logFile, durability));
+            ledger.reset();
+            Files.deleteIfExists(logFile);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static long run(Ledger ledger, Path logFile, WriteAheadLog.Durability durability) throws Exception {
+
+        ledger.reset();
+        if (logFile != null) {
+            ledger.attachWriteAheadLog(logFile, durability);
+        }
+        for (int t = 0; t < THREADS; t++) {
+            ledger.createAccount("account" + t);
+            Account master = ledger.getUncommittedBlock().getAccount("master");
+            Account receiver = ledger.getUncommittedBlock().getAccount("account" + t);
+            ledger.processTransaction(new Transaction("fund" + t, 1000000, 10, "fund", master, receiver));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < TRANSFERS; i++) {
+                    Account payer = ledger.getUncommittedBlock().getAccount("account" + thread);
+                    Account receiver = ledger.getUncommittedBlock().getAccount("account" + ((thread + 1) % THREADS));
+                    ledger.processTransaction(new Transaction(thread + "-" + i, 1, 10, "benchmark", payer, receiver));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        return THREADS * TRANSFERS * 1_000_000_000L / elapsed;
+    }
+}
@@ -0,0 +1,126 @@
+package com.se300.ledger.command;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.se300.ledger.Ledger;
+
+/**
+ * Tests for processing command files through the pipelined reader, parsers and executor
+ */
+public class CommandPipelineTest {
+
+    private static final int TRANSACTIONS = 2000;
+
+    @TempDir
+    Path directory;
+
+    private Ledger ledger;
+
+    @BeforeEach
+    public void setUp() {
+        ledger = Ledger.getInstance("test", "test ledger 2023", "chapman");
+        ledger.reset();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ledger.reset();
+    }
+
+    @Test
+    public void testSameAsSequential() throws Exception {
+        Path script = writeScript();
+
+        String sequentialOutput = capture(() -> processSequentially(script));
+        Map<String, Integer> sequentialBalances = ledger.getAccountBalances();
+        int sequentialBlocks = ledger.getNumberOfBlocks();
+        String hash = ledger.getBlock(sequentialBlocks).getHash();
+
+        //Chunks far smaller than the file, cut in the middle of lines
+        ledger.reset();
+        String pipelinedOutput = capture(() -> new CommandProcessor().processCommandFile(script.toString(), 4, 256));
+
+        assertEquals(sequentialOutput, pipelinedOutput);
+        assertEquals(sequentialBalances, ledger.getAccountBalances());
+        assertEquals(sequentialBlocks, ledger.getNumberOfBlocks());
+        assertEquals(hash, ledger.getBlock(sequentialBlocks).getHash());
+
+        assertTrue(pipelinedOutput.contains("Failed due to: Missing Arguments for Command: process-transaction"
+                + " On Line Number: " + (TRANSACTIONS + 11)));
+        assertTrue(pipelinedOutput.contains("Failed due to: Invalid Command for Command: unknown-command"
+                + " On Line Number: " + (TRANSACTIONS + 12)));
+    }
+
+    private Path writeScript() throws Exception {
+        StringBuilder script = new StringBuilder();
+        script.append("# generated script\n");
+        script.append("create-ledger test description \"test ledger 2023\" seed \"chapman\"\n");
+        script.append("create-account mary\ncreate-account bob\r\n\n");
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            String payer = i % 4 == 0 ? "master" : "mary";
+            String receiver = i % 4 == 0 ? "mary" : "bob";
+            script.append("process-transaction ").append(i).append(" amount ").append(i % 4 == 0 ? 1000 : 10)
+                    .append(" fee 10 note \"note ").append(i).append("\" payer ").append(payer)
+                    .append(" receiver ").append(receiver).append(i % 7 == 0 ? "\r\n" : "\n");
+            if (i % 500 == 0) {
+                script.append("get-account-balance mary\n");
+            }
+        }
+        script.append("get-block 3\n");
+        script.append("process-transaction x amount 10 fee 10 note missing payer mary\n");
+        script.append("unknown-command\n");
+        script.append("process-transaction y amount 10 fee 10 note \"no account\" payer mary receiver nobody\n");
+        script.append("   # indented comment\n");
+        script.append("get-account-balances\nvalidate");
+
+        Path path = directory.resolve("generated.script");
+        Files.writeString(path, script.toString());
+        return path;
+    }
+
+    private static void processSequentially(Path script) {
+        try {
+            List<String> lines = Files.readAllLines(script);
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                try {
+                    if (!line.trim().startsWith("#") && line.trim().length() != 0) {
+                        CommandProcessor.processCommand(line);
+                    }
+                } catch (CommandProcessorException e) {
+                    e.setLineNumber(i + 1);
+                    System.out.println("Failed due to: " + e.getReason() + " for Command: " + e.getCommand()
+                            + " On Line Number: " + e.getLineNumber());
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String capture(Runnable task) {
+        PrintStream console = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            task.run();
+        } finally {
+            System.setOut(console);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
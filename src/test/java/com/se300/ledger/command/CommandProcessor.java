@@ -1,19 +1,28 @@
 package com.se300.ledger.command;
 
 
-import java.io.File;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.se300.ledger.*;
 
@@ -28,140 +37,373 @@ public class CommandProcessor {
 
     private static Ledger ledger = null;
 
-    public static void processCommand(String command) throws CommandProcessorException {
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final ParsedChunk END_OF_FILE = new ParsedChunk("", 0);
+
+    // Tokenizer reused for every command processed by the thread
+    private static final ThreadLocal<CommandTokenizer> tokenizers = ThreadLocal.withInitial(CommandTokenizer::new);
+
+    /**
+     * Commands by the token naming them
+     */
+    private enum Command {
+        CREATE_LEDGER("create-ledger", 6, "create-ledger"),
+        CREATE_ACCOUNT("create-account", 2, "create-account"),
+        GET_ACCOUNT_BALANCE("get-account-balance", 2, "create-account"),
+        GET_ACCOUNT_BALANCES("get-account-balances", -1, null),
+        PROCESS_TRANSACTION("process-transaction", 12, "process-transaction"),
+        GET_BLOCK("get-block", 2, "get-block"),
+        GET_TRANSACTION("get-transaction", 2, "get-transaction"),
+        VALIDATE("validate", -1, null);
+
+        // Open addressing table by the hash of the name, computed once instead of a string switch on every line
+        private static final Command[] TABLE = new Command[16];
+
+        static {
+            for (Command command : values()) {
+                int slot = slot(command.name.hashCode());
+                while (TABLE[slot] != null) {
+                    slot = (slot + 1) & (TABLE.length - 1);
+                }
+                TABLE[slot] = command;
+            }
+        }
+
+        private final String name;
+        // Number of tokens the command takes, -1 when not checked
+        private final int argumentCount;
+        // Command reported when arguments are missing
+        private final String errorName;
+
+        Command(String name, int argumentCount, String errorName) {
+            this.name = name;
+            this.argumentCount = argumentCount;
+            this.errorName = errorName;
+        }
+
+        /**
+         * Find command named by the first token, hashing and comparing the token in place
+         * @param tokens
+         * @return Command or Null if the command is unknown
+         */
+        static Command lookup(CommandTokenizer tokens) {
+            if (tokens.getTokenCount() == 0) {
+                return null;
+            }
+            int slot = slot(tokens.hashToken(0));
+            for (Command command = TABLE[slot]; command != null; command = TABLE[slot]) {
+                if (tokens.tokenEquals(0, command.name)) {
+                    return command;
+                }
+                slot = (slot + 1) & (TABLE.length - 1);
+            }
+            return null;
+        }
+
+        private static int slot(int hash) {
+            return (hash ^ (hash >>> 16)) & (TABLE.length - 1);
+        }
+    }
+
+    /**
+     * Commands parsed from the lines of a chunk, ready to be executed in line order. Commands are kept
+     * in parallel arrays holding the offsets of their tokens into the decoded chunk, so parsing a line
+     * does not allocate; token strings are only created when a command is executed
+     */
+    private static final class ParsedChunk {
+
+        private static final int INITIAL_COMMANDS = 64;
+
+        private final CharSequence text;
+        private int commandCount;
+        private int lineCount;
+
+        private Command[] types = new Command[INITIAL_COMMANDS];
+        private int[] lineNumbers = new int[INITIAL_COMMANDS];
+        // Index of the offsets of the first token after the command name, by command
+        private int[] firstTokens = new int[INITIAL_COMMANDS];
+        // Start and end of every token after the command name, the end complemented for quoted tokens
+        private int[] offsets = new int[INITIAL_COMMANDS * 8];
+        private int offsetCount;
+        // Two numbers by command
+        private int[] numbers = new int[INITIAL_COMMANDS * 2];
+        // Failures by command, allocated on the first failure of the chunk
+        private CommandProcessorException[] errors;
+        private NumberFormatException[] numberErrors;
+
+        ParsedChunk(CharSequence text, int lineCount) {
+            this.text = text;
+            this.lineCount = lineCount;
+        }
+
+        /**
+         * Add command with the tokens following its name
+         * @return int representing index of the command
+         */
+        int add(Command type, CommandTokenizer tokens, int lineNumber) {
+            int index = add(type, lineNumber);
+            int tokenCount = tokens.getTokenCount();
+            if (offsetCount + 2 * tokenCount > offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, offsetCount + 2 * tokenCount));
+            }
+            for (int i = 1; i < tokenCount; i++) {
+                offsets[offsetCount++] = tokens.getStart(i);
+                offsets[offsetCount++] = tokens.isQuoted(i) ? ~tokens.getEnd(i) : tokens.getEnd(i);
+            }
+            return index;
+        }
+
+        /**
+         * Add line that failed to parse in place of its command
+         */
+        void addError(CommandProcessorException error, int lineNumber) {
+            int index = add(null, lineNumber);
+            if (errors == null) {
+                errors = new CommandProcessorException[types.length];
+            }
+            errors[index] = error;
+        }
+
+        private int add(Command type, int lineNumber) {
+            if (commandCount == types.length) {
+                int capacity = commandCount * 2;
+                types = Arrays.copyOf(types, capacity);
+                lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+                firstTokens = Arrays.copyOf(firstTokens, capacity);
+                numbers = Arrays.copyOf(numbers, capacity * 2);
+                if (errors != null) {
+                    errors = Arrays.copyOf(errors, capacity);
+                }
+                if (numberErrors != null) {
+                    numberErrors = Arrays.copyOf(numberErrors, capacity);
+                }
+            }
+            types[commandCount] = type;
+            lineNumbers[commandCount] = lineNumber;
+            firstTokens[commandCount] = offsetCount;
+            return commandCount++;
+        }
+
+        void setNumber(int command, int index, int number) {
+            numbers[command * 2 + index] = number;
+        }
+
+        /**
+         * Record number that failed to parse, reported once the command gets to the number,
+         * as when processed one by one
+         */
+        void setNumberError(int command, NumberFormatException error) {
+            if (numberErrors == null) {
+                numberErrors = new NumberFormatException[types.length];
+            }
+            numberErrors[command] = error;
+        }
+
+        CommandProcessorException getError(int command) {
+            return errors == null ? null : errors[command];
+        }
+
+        /**
+         * Get token of the command without quotes
+         * @param command
+         * @param tokenIndex index of the token within the line, the command name being token 0
+         * @return String
+         */
+        String token(int command, int tokenIndex) {
+            int offset = firstTokens[command] + 2 * (tokenIndex - 1);
+            int end = offsets[offset + 1];
+            return CommandTokenizer.getToken(text, offsets[offset], end < 0 ? ~end : end, end < 0);
+        }
+
+        int number(int command, int index) {
+            if (numberErrors != null && numberErrors[command] != null) {
+                throw numberErrors[command];
+            }
+            return numbers[command * 2 + index];
+        }
+    }
+
+    /**
+     * Parse and execute single command
+     * @param command
+     * @throws CommandProcessorException
+     */
+    public static void processCommand(CharSequence command) throws CommandProcessorException {
+        ParsedChunk chunk = new ParsedChunk(command, 1);
+        parseCommand(tokenizers.get(), command, 0, command.length(), 0, chunk);
+        executeCommand(chunk, 0, System.out);
+    }
+
+    /**
+     * Parse and validate command line, without touching the Ledger, and add it to the chunk
+     * @param tokens tokenizer of the parsing thread
+     * @param text
+     * @param start offset of the line within the text
+     * @param end offset following the line
+     * @param lineNumber
+     * @param chunk
+     * @throws CommandProcessorException if the command is unknown or is missing arguments
+     */
+    private static void parseCommand(CommandTokenizer tokens, CharSequence text, int start, int end,
+                                     int lineNumber, ParsedChunk chunk) throws CommandProcessorException {
 
-        List<String> tokens = new ArrayList<>();
         //Split the line into tokens between spaces and quotes
-        Matcher matcher = Pattern.compile("([^\"]\\S*|\".+?\")\\s*").matcher(command);
-        while (matcher.find())
-            tokens.add(matcher.group(1).replace("\"", ""));
+        int tokenCount = tokens.tokenize(text, start, end);
+
+        Command type = Command.lookup(tokens);
+        if (type == null)
+            throw new CommandProcessorException(tokens.getToken(0), "Invalid Command");
+
+        if (type.argumentCount >= 0 && tokenCount != type.argumentCount)
+            throw new CommandProcessorException(type.errorName, "Missing Arguments");
+
+        int command = chunk.add(type, tokens, lineNumber);
+        try {
+            if (type == Command.PROCESS_TRANSACTION) {
+                chunk.setNumber(command, 0, tokens.getInt(3));
+                chunk.setNumber(command, 1, tokens.getInt(5));
+            } else if (type == Command.GET_BLOCK) {
+                chunk.setNumber(command, 0, tokens.getInt(1));
+            }
+        } catch (NumberFormatException e) {
+            chunk.setNumberError(command, e);
+        }
+    }
+
+    /**
+     * Execute parsed command against the Ledger
+     * @param chunk
+     * @param command index of the command within the chunk
+     * @param out stream the output of the command is printed to
+     * @throws CommandProcessorException
+     */
+    private static void executeCommand(ParsedChunk chunk, int command, PrintStream out)
+            throws CommandProcessorException {
+
+        CommandProcessorException error = chunk.getError(command);
+        if (error != null)
+            throw error;
 
-        switch (tokens.get(0)) {
-            case "create-ledger" -> {
-                if(tokens.size() != 6)
-                    throw new CommandProcessorException("create-ledger", "Missing Arguments");
+        switch (chunk.types[command]) {
+            case CREATE_LEDGER -> {
 
-                System.out.println("Creating Ledger: " + tokens.get(1) + " " + tokens.get(3) + " " + tokens.get(5));
-                ledger = Ledger.getInstance(tokens.get(1), tokens.get(3), tokens.get(5));
+                String name = chunk.token(command, 1);
+                String description = chunk.token(command, 3);
+                String seed = chunk.token(command, 5);
+                out.println("Creating Ledger: " + name + " " + description + " " + seed);
+                ledger = Ledger.getInstance(name, description, seed);
             }
-            case "create-account" -> {
-                if(tokens.size() != 2)
-                    throw new CommandProcessorException("create-account", "Missing Arguments");
+            case CREATE_ACCOUNT -> {
 
-                System.out.println("Creating Account: " + tokens.get(1));
+                String address = chunk.token(command, 1);
+                out.println("Creating Account: " + address);
                 try {
-                    ledger.createAccount(tokens.get(1));
+                    ledger.createAccount(address);
                 } catch (LedgerException e) {
-                    System.out.println("Failed due to: " + e.getReason());
+                    out.println("Failed due to: " + e.getReason());
                 }
             }
-            case "get-account-balance" -> {
-                if(tokens.size() != 2)
-                    throw new CommandProcessorException("create-account", "Missing Arguments");
+            case GET_ACCOUNT_BALANCE -> {
 
-                System.out.println("Getting Balance for: " + tokens.get(1));
+                String address = chunk.token(command, 1);
+                out.println("Getting Balance for: " + address);
                 try {
-                    System.out.println("Account Balance for: " + tokens.get(1) + " is "
-                            + ledger.getAccountBalance(tokens.get(1)));
+                    out.println("Account Balance for: " + address + " is "
+                            + ledger.getAccountBalance(address));
 
                 } catch (LedgerException e) {
-                    System.out.println("Failed due to: " + e.getReason());
+                    out.println("Failed due to: " + e.getReason());
                 }
             }
-            case "get-account-balances" -> {
-                System.out.println("Getting All Balances");
+            case GET_ACCOUNT_BALANCES -> {
+                out.println("Getting All Balances");
 
                 Map<String,Integer> map = ledger.getAccountBalances();
 
                 if(map == null){
-                    System.out.println("No Account Has Been Committed");
+                    out.println("No Account Has Been Committed");
                     break;
                 }
 
                 Set<String> keys = new HashSet<>(map.keySet());
 
                 for (String key : keys) {
-                    System.out.println("Account Balance for: " + key + " is " + map.get(key));
+                    out.println("Account Balance for: " + key + " is " + map.get(key));
                 }
             }
-            case "process-transaction" -> {
+            case PROCESS_TRANSACTION -> {
 
-                if(tokens.size() != 12)
-                    throw new CommandProcessorException("process-transaction", "Missing Arguments");
 
-                System.out.println("Processing Transaction: " + tokens.get(1) + " "
-                        + tokens.get(3) + " " + tokens.get(5) + " " + tokens.get(7) + " "
-                        + tokens.get(9) + " " + tokens.get(11) + " ");
+                String transactionId = chunk.token(command, 1);
+                String note = chunk.token(command, 7);
+                String payerAddress = chunk.token(command, 9);
+                String receiverAddress = chunk.token(command, 11);
+                out.println("Processing Transaction: " + transactionId + " "
+                        + chunk.token(command, 3) + " " + chunk.token(command, 5) + " " + note + " "
+                        + payerAddress + " " + receiverAddress + " ");
 
                 Block block = ledger.getUncommittedBlock();
 
-                Account payer = block.getAccount (tokens.get(9));
-                Account receiver = block.getAccount(tokens.get(11));
+                Account payer = block.getAccount (payerAddress);
+                Account receiver = block.getAccount(receiverAddress);
 
                 if(payer == null || receiver == null){
                     throw new CommandProcessorException("process-transaction", "Account Does Not Exist") ;
                 }
 
-                Transaction tempTransaction = new Transaction(tokens.get(1), Integer.parseInt(tokens.get(3)),
-                        Integer.parseInt(tokens.get(5)), tokens.get(7), payer, receiver);
+                Transaction tempTransaction = new Transaction(transactionId, chunk.number(command, 0),
+                        chunk.number(command, 1), note, payer, receiver);
                 try {
                     ledger.processTransaction(tempTransaction);
                 } catch (LedgerException e) {
-                    System.out.println("Failed due to: " + e.getReason());
+                    out.println("Failed due to: " + e.getReason());
                 }
             }
-            case "get-block" -> {
+            case GET_BLOCK -> {
 
-                if(tokens.size() != 2)
-                    throw new CommandProcessorException("get-block", "Missing Arguments");
 
-                System.out.println("Get Block: " + tokens.get(1));
+                out.println("Get Block: " + chunk.token(command, 1));
                 Block block = null;
                 try {
-                    block = ledger.getBlock(Integer.parseInt(tokens.get(1)));
+                    block = ledger.getBlock(chunk.number(command, 0));
                 } catch (LedgerException e) {
-                    System.out.println("Failed due to: " + e.getReason());
+                    out.println("Failed due to: " + e.getReason());
                     break;
                 }
 
-                System.out.println("Block Number: " + block.getBlockNumber() + " "
+                out.println("Block Number: " + block.getBlockNumber() + " "
                         + "Hash: " + block.getHash() + " " + "Previous Hash: " + block.getPreviousHash()
                 );
 
                 for(Transaction transaction: block.getTransactionList()){
-                    System.out.println(transaction.toString());
+                    out.println(transaction.toString());
                 }
 
             }
-            case "get-transaction" -> {
+            case GET_TRANSACTION -> {
 
-                if(tokens.size() != 2)
-                    throw new CommandProcessorException("get-transaction", "Missing Arguments");
 
-                System.out.println("Get Transaction: " + tokens.get(1));
-                Transaction transaction = ledger.getTransaction(tokens.get(1));
+                String transactionId = chunk.token(command, 1);
+                out.println("Get Transaction: " + transactionId);
+                Transaction transaction = ledger.getTransaction(transactionId);
 
-                System.out.println("Transaction ID: " + transaction.getTransactionId() + " "
+                out.println("Transaction ID: " + transaction.getTransactionId() + " "
                         + "Amount: " + transaction.getAmount() + " " + "Fee: "
                         + transaction.getFee() + " " + "Note: " + transaction.getNote() + " " + "Payer: "
                         + transaction.getPayer().getAddress() + " " + "Receiver: "
                         + transaction.getReceiver().getAddress()
                 );
             }
-            case "validate" -> {
-                System.out.print("Validate: ");
+            case VALIDATE -> {
+                out.print("Validate: ");
                 try {
                     ledger.validate();
-                    System.out.println("Valid");
+                    out.println("Valid");
                 } catch (LedgerException e) {
-                    System.out.println("Failed due to: " + e.getReason());
+                    out.println("Failed due to: " + e.getReason());
                 }
 
             }
-            default ->  {
-                throw new CommandProcessorException(tokens.get(0), "Invalid Command");
-
-            }
 
         }
 
@@ -171,30 +413,179 @@ public class CommandProcessor {
      * Process File from the command line
      */
     public void processCommandFile(String fileName){
+        processCommandFile(fileName, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Process File through a pipeline of three stages. A reader thread maps the file chunk by chunk,
+     * cutting every chunk after its last line end, worker threads decode, tokenize and validate the
+     * chunks in parallel, and the calling thread executes the parsed commands against the Ledger in
+     * line order. Output and Ledger state are the same as when processing the lines one by one
+     * @param fileName
+     * @param parserThreads number of worker threads parsing chunks
+     * @param chunkSize size of the mapped chunks in bytes, grown for lines longer than a chunk
+     */
+    void processCommandFile(String fileName, int parserThreads, int chunkSize){
+
+        ExecutorService parsers = Executors.newFixedThreadPool(parserThreads, runnable -> {
+            Thread thread = new Thread(runnable, "command-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //Bounded, so that the reader stays only a few chunks ahead of the commands executed
+        BlockingQueue<Future<ParsedChunk>> chunks = new ArrayBlockingQueue<>(parserThreads * 2);
+        Thread reader = new Thread(() -> readChunks(Paths.get(fileName), chunkSize, parsers, chunks),
+                "command-reader");
+        reader.setDaemon(true);
+
+        //Output is written in line order by this thread only, so it is buffered until the end
+        PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false);
+
+        try {
+            reader.start();
+            int lineOffset = 0;
+            while (true) {
+                ParsedChunk chunk = chunks.take().get();
+                if (chunk == END_OF_FILE) {
+                    break;
+                }
+                for (int command = 0; command < chunk.commandCount; command++) {
+                    try {
+                        executeCommand(chunk, command, out);
+                    } catch (CommandProcessorException e) {
+                        e.setLineNumber(lineOffset + chunk.lineNumbers[command]);
+                        out.println("Failed due to: " + e.getReason() + " for Command: " + e.getCommand()
+                                + " On Line Number: " + e.getLineNumber());
+                    }
+                }
+                lineOffset += chunk.lineCount;
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                e.getCause().printStackTrace();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            } else {
+                throw new IllegalStateException(e.getCause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            out.flush();
+            reader.interrupt();
+            parsers.shutdownNow();
+        }
+    }
+
+    /**
+     * Map the file chunk by chunk and hand every chunk to a parser, queueing the results in file order
+     * @param path
+     * @param chunkSize
+     * @param parsers
+     * @param chunks
+     */
+    private static void readChunks(Path path, int chunkSize, ExecutorService parsers,
+                                   BlockingQueue<Future<ParsedChunk>> chunks) {
+        try {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                long position = 0;
+                while (position < size) {
+                    long length = Math.min(chunkSize, size - position);
+                    MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                    int end = position + length < size ? lastLineEnd(mapping) : (int) length;
+
+                    //Line longer than the chunk, map more of it
+                    while (end == 0) {
+                        length = Math.min(Math.min(length * 2, Integer.MAX_VALUE - 8), size - position);
+                        mapping = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                        end = position + length < size ? lastLineEnd(mapping) : (int) length;
+                    }
+
+                    ByteBuffer chunk = mapping.slice(0, end);
+                    chunks.put(parsers.submit(() -> parseChunk(chunk)));
+                    position += end;
+                }
+            }
+            chunks.put(CompletableFuture.completedFuture(END_OF_FILE));
+        } catch (InterruptedException e) {
+            //Commands have stopped being executed
+        } catch (Throwable e) {
+            //Waits for room like any chunk, so that the failure cannot be lost on a full queue
+            try {
+                chunks.put(CompletableFuture.failedFuture(e));
+            } catch (InterruptedException interrupted) {
+                //Commands have stopped being executed
+            }
+        }
+    }
+
+    /**
+     * Decode chunk and parse its lines. Line numbers are relative to the chunk
+     * @param bytes
+     * @return ParsedChunk
+     */
+    private static ParsedChunk parseChunk(ByteBuffer bytes) {
+        CharBuffer text;
+        try {
+            text = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(bytes);
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException(e);
+        }
 
-        List<String> tokens = new ArrayList<>();
+        CommandTokenizer tokens = tokenizers.get();
+        ParsedChunk chunk = new ParsedChunk(text, 0);
+        int lineNumber = 0;
+        int start = 0;
+        int length = text.length();
+        while (start < length) {
+            //Lines end with \n, \r or \r\n
+            int end = start;
+            while (end < length && text.charAt(end) != '\n' && text.charAt(end) != '\r') {
+                end++;
+            }
+            lineNumber++;
 
-        AtomicInteger atomicInteger = new AtomicInteger(0);
+            if (!isBlankOrComment(text, start, end)) {
+                try {
+                    parseCommand(tokens, text, start, end, lineNumber, chunk);
+                } catch (CommandProcessorException e) {
+                    chunk.addError(e, lineNumber);
+                }
+            }
 
-        //Process all the lines in the file
-        try (Stream<String> stream = Files.lines(Paths.get(fileName))) {
-            stream
-                    .forEach(line -> {
-                        try {
-                            atomicInteger.getAndIncrement();
-                            if(!line.trim().startsWith("#") && line.trim().length() != 0) {
-                                processCommand(line);
-                            }
-                        } catch (CommandProcessorException e) {
-                            e.setLineNumber(atomicInteger.get());
-                            System.out.println("Failed due to: " + e.getReason() + " for Command: " + e.getCommand()
-                                    + " On Line Number: " + e.getLineNumber());
-                        }
-                    });
+            if (end + 1 < length && text.charAt(end) == '\r' && text.charAt(end + 1) == '\n') {
+                end++;
+            }
+            start = end + 1;
+        }
+        chunk.lineCount = lineNumber;
+        return chunk;
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    // Position following the last \n of the chunk, 0 if there is none
+    private static int lastLineEnd(ByteBuffer chunk) {
+        for (int i = chunk.limit() - 1; i >= 0; i--) {
+            if (chunk.get(i) == '\n') {
+                return i + 1;
+            }
         }
+        return 0;
+    }
 
+    // Same as checking the trimmed line between the offsets for being empty or starting with #
+    private static boolean isBlankOrComment(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c > ' ') {
+                return c == '#';
+            }
+        }
+        return true;
     }
 }
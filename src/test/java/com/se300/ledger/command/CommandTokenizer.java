@@ -0,0 +1,239 @@
+package com.se300.ledger.command;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * CommandTokenizer class implementation splitting a command line into tokens between spaces and
+ * quotes in a single pass over the characters, with the same result as the pattern
+ * ([^"]\S*|".+?")\s* followed by removing the quotes from every token. Tokens are kept as offsets
+ * into the text in reusable arrays, so tokenizing does not allocate; strings are only created for
+ * the tokens asked for and numbers are parsed in place. A line can be tokenized where it lies in a
+ * larger text, such as a decoded chunk of a file, offsets are then relative to that text. The
+ * tokenizer is reused line after line and is not thread safe.
+ */
+public class CommandTokenizer {
+
+    private static final int INITIAL_TOKENS = 16;
+
+    private CharSequence line = "";
+    // End of the line within the text
+    private int limit;
+    private int[] starts = new int[INITIAL_TOKENS];
+    private int[] ends = new int[INITIAL_TOKENS];
+    // Set for tokens holding quotes that are removed from the token
+    private boolean[] quoted = new boolean[INITIAL_TOKENS];
+    private int tokenCount;
+
+    /**
+     * Split the line into tokens, replacing the tokens of the previous line
+     * @param line
+     * @return int representing number of tokens
+     */
+    public int tokenize(CharSequence line) {
+        return tokenize(line, 0, line.length());
+    }
+
+    /**
+     * Split the line between the offsets of the text into tokens, replacing the tokens of the previous line
+     * @param text
+     * @param lineStart offset of the first character of the line
+     * @param lineEnd offset following the last character of the line
+     * @return int representing number of tokens
+     */
+    public int tokenize(CharSequence text, int lineStart, int lineEnd) {
+        this.line = text;
+        this.limit = lineEnd;
+        this.tokenCount = 0;
+
+        int length = lineEnd;
+        int position = lineStart;
+        while (position < length) {
+            if (line.charAt(position) != '"') {
+                //Any character followed by non-space characters
+                int end = position + 1;
+                while (end < length && !isSpace(line.charAt(end))) {
+                    end++;
+                }
+                addToken(position, end);
+                position = skipSpaces(end);
+                continue;
+            }
+
+            //Quoted token ends at the first quote after at least one character
+            int end = position + 1;
+            while (end < length && !isLineTerminator(line.charAt(end))
+                    && (end == position + 1 || line.charAt(end) != '"')) {
+                end++;
+            }
+            if (end < length && end > position + 1 && line.charAt(end) == '"') {
+                addToken(position + 1, end);
+                position = skipSpaces(end + 1);
+            } else {
+                //Unterminated quote is skipped
+                position++;
+            }
+        }
+        return tokenCount;
+    }
+
+    /**
+     * Getter method for the number of tokens of the line
+     * @return
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Get token without quotes
+     * @param index
+     * @return String
+     */
+    public String getToken(int index) {
+        Objects.checkIndex(index, tokenCount);
+        return getToken(line, starts[index], ends[index], quoted[index]);
+    }
+
+    /**
+     * Get token between the offsets of the text without quotes
+     * @param text
+     * @param start
+     * @param end
+     * @param quoted true if the token holds quotes
+     * @return String
+     */
+    static String getToken(CharSequence text, int start, int end, boolean quoted) {
+        if (!quoted) {
+            return text.subSequence(start, end).toString();
+        }
+        StringBuilder token = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c != '"') {
+                token.append(c);
+            }
+        }
+        return token.toString();
+    }
+
+    /**
+     * Get offset of the first character of the token within the text
+     * @param index
+     * @return
+     */
+    public int getStart(int index) {
+        Objects.checkIndex(index, tokenCount);
+        return starts[index];
+    }
+
+    /**
+     * Get offset following the last character of the token within the text
+     * @param index
+     * @return
+     */
+    public int getEnd(int index) {
+        Objects.checkIndex(index, tokenCount);
+        return ends[index];
+    }
+
+    /**
+     * Check if the token holds quotes that are removed from it
+     * @param index
+     * @return
+     */
+    public boolean isQuoted(int index) {
+        Objects.checkIndex(index, tokenCount);
+        return quoted[index];
+    }
+
+    /**
+     * Hash the token without quotes in place, the same as hashCode of the token string
+     * @param index
+     * @return int
+     */
+    public int hashToken(int index) {
+        Objects.checkIndex(index, tokenCount);
+        int hash = 0;
+        for (int i = starts[index]; i < ends[index]; i++) {
+            char c = line.charAt(i);
+            if (c != '"') {
+                hash = 31 * hash + c;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Parse token as a decimal integer without creating a string for it
+     * @param index
+     * @return int
+     * @throws NumberFormatException if the token is not an integer
+     */
+    public int getInt(int index) {
+        Objects.checkIndex(index, tokenCount);
+        if (quoted[index]) {
+            return Integer.parseInt(getToken(index));
+        }
+        return Integer.parseInt(line, starts[index], ends[index], 10);
+    }
+
+    /**
+     * Check if the token equals the value
+     * @param index
+     * @param value
+     * @return
+     */
+    public boolean tokenEquals(int index, String value) {
+        if (index >= tokenCount) {
+            return false;
+        }
+        if (quoted[index]) {
+            return getToken(index).equals(value);
+        }
+        int start = starts[index];
+        int length = ends[index] - start;
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addToken(int start, int end) {
+        if (tokenCount == starts.length) {
+            starts = Arrays.copyOf(starts, tokenCount * 2);
+            ends = Arrays.copyOf(ends, tokenCount * 2);
+            quoted = Arrays.copyOf(quoted, tokenCount * 2);
+        }
+        boolean hasQuote = false;
+        for (int i = start; i < end && !hasQuote; i++) {
+            hasQuote = line.charAt(i) == '"';
+        }
+        starts[tokenCount] = start;
+        ends[tokenCount] = end;
+        quoted[tokenCount] = hasQuote;
+        tokenCount++;
+    }
+
+    private int skipSpaces(int position) {
+        while (position < limit && isSpace(line.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    // Same characters as \s of java.util.regex
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    // Characters not matched by . of java.util.regex
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == 0x2028 || c == 0x2029;
+    }
+}
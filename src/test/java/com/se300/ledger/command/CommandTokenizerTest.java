@@ -0,0 +1,97 @@
+package com.se300.ledger.command;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for splitting command lines into tokens the same way as the command pattern
+ */
+public class CommandTokenizerTest {
+
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("([^\"]\\S*|\".+?\")\\s*");
+
+    private final CommandTokenizer tokenizer = new CommandTokenizer();
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "process-transaction 1 amount 1000 fee 10 note \"fund account\" payer master receiver mary",
+            "create-ledger test description \"test ledger 2023\" seed \"chapman\"",
+            "  create-account   mary  ",
+            "get-block \"\" 1",
+            "note \"\"\" x\"",
+            "note \"unterminated quote",
+            "note \"a\"b\"c\" d",
+            "in\"side quote",
+            "tab\tseparated\u000Bvertical\ftokens",
+            "\"",
+            "",
+            "\"\"",
+            "x \" \" y"
+    })
+    public void testSameTokensAsPattern(String line) {
+        assertEquals(patternTokens(line), tokens(line));
+    }
+
+    @Test
+    public void testScriptLines() throws Exception {
+        Path path = new File(Objects.requireNonNull(getClass().getResource("/ledger.script")).getFile()).toPath();
+        for (String line : Files.readAllLines(path)) {
+            assertEquals(patternTokens(line), tokens(line));
+        }
+    }
+
+    @Test
+    public void testTokenAccess() {
+        tokenizer.tokenize("process-transaction 7 amount 1\"5 fee -10");
+        assertTrue(tokenizer.tokenEquals(0, "process-transaction"));
+        assertFalse(tokenizer.tokenEquals(0, "process"));
+        assertFalse(tokenizer.tokenEquals(6, "fee"));
+        assertEquals(7, tokenizer.getInt(1));
+        assertEquals(15, tokenizer.getInt(3));
+        assertEquals(-10, tokenizer.getInt(5));
+        assertThrows(NumberFormatException.class, () -> tokenizer.getInt(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> tokenizer.getToken(6));
+    }
+
+    @Test
+    public void testTokensWithinLine() {
+        String text = "# skipped\nget-account-balance \"ma ry\"\nvalidate";
+        int start = text.indexOf('g');
+        assertEquals(2, tokenizer.tokenize(text, start, text.lastIndexOf('\n')));
+        assertEquals("get-account-balance".hashCode(), tokenizer.hashToken(0));
+        assertEquals("ma ry".hashCode(), tokenizer.hashToken(1));
+        assertFalse(tokenizer.isQuoted(1));
+        assertEquals("ma ry", CommandTokenizer.getToken(text, tokenizer.getStart(1), tokenizer.getEnd(1), false));
+    }
+
+    private List<String> tokens(String line) {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < tokenizer.tokenize(line); i++) {
+            tokens.add(tokenizer.getToken(i));
+        }
+        return tokens;
+    }
+
+    private static List<String> patternTokens(String line) {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN_PATTERN.matcher(line);
+        while (matcher.find())
+            tokens.add(matcher.group(1).replace("\"", ""));
+        return tokens;
+    }
+}
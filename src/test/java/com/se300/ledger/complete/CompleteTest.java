@@ -1,20 +1,34 @@
 package com.se300.ledger.complete;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 import static org.mockito.Mockito.mockStatic;
 
 import com.se300.ledger.Account;
+import com.se300.ledger.AccountHistory;
+import com.se300.ledger.BlockSealPolicy;
 import com.se300.ledger.Block;
 import com.se300.ledger.Ledger;
+import com.se300.ledger.LedgerCodec;
+import com.se300.ledger.LedgerException;
+import com.se300.ledger.MerkleProof;
 import com.se300.ledger.MerkleTrees;
+import com.se300.ledger.PersistentHashMap;
 import com.se300.ledger.Transaction;
+import com.se300.ledger.TransactionResult;
 
 public class CompleteTest {
 
@@ -124,6 +138,99 @@ public class CompleteTest {
     }
 
 
+    @Test
+    public void testBlock_inheritAccounts() {
+        Block previousBlock = new Block(1, "");
+        previousBlock.addAccount("mary", new Account("mary", 100));
+
+        Block block = new Block(2, "hash");
+        block.inheritAccounts(previousBlock);
+        assertEquals(previousBlock.getAccount("mary"), block.getAccount("mary"));
+        assertTrue(block.getChangedAccounts().isEmpty());
+
+        block.getAccountForUpdate("mary").setBalance(40);
+
+        assertEquals(100, previousBlock.getAccount("mary").getBalance());
+        assertEquals(40, block.getAccount("mary").getBalance());
+        assertEquals(1, block.getChangedAccounts().size());
+        assertEquals(1, block.getAccountBalanceMap().size());
+    }
+
+    @Test
+    public void testBlock_getTransaction() {
+        Account mary = new Account("mary", 100);
+        Account sergey = new Account("sergey", 0);
+        Block block = new Block(1, "");
+        Transaction first = new Transaction("1", 10, 10, "first", mary, sergey);
+        Transaction second = new Transaction("2", 20, 10, "second", mary, sergey);
+
+        block.addTransaction(first, 0);
+        block.addTransaction(second, 0);
+
+        assertEquals(first, block.getTransaction("1"));
+        assertEquals(second, block.getTransaction("2"));
+        assertEquals(1, block.getTransactionList().indexOf(second));
+        assertNull(block.getTransaction("3"));
+    }
+
+    /*
+     * PersistentHashMap.java
+     */
+
+    @Test
+    public void testPersistentHashMap_put() {
+        PersistentHashMap<String, Integer> empty = PersistentHashMap.empty();
+        PersistentHashMap<String, Integer> map = empty;
+        for (int i = 0; i < 1000; i++) {
+            map = map.put("account" + i, i);
+        }
+        PersistentHashMap<String, Integer> updated = map.put("account7", 70);
+
+        assertEquals(0, empty.size());
+        assertEquals(1000, map.size());
+        assertEquals(1000, updated.size());
+        assertEquals(7, map.get("account7"));
+        assertEquals(70, updated.get("account7"));
+
+        int count = 0;
+        for (Map.Entry<String, Integer> entry : updated) {
+            assertEquals(entry.getValue(), updated.asMap().get(entry.getKey()));
+            count++;
+        }
+        assertEquals(1000, count);
+    }
+
+    /*
+     * AccountHistory.java
+     */
+
+    @Test
+    public void testAccountHistory_getBalance() {
+        AccountHistory history = new AccountHistory();
+        for (int blockNumber = 3; blockNumber <= 300; blockNumber += 3) {
+            history.record("mary", blockNumber, blockNumber * 10);
+        }
+        history.record("bob", 50, 7);
+
+        assertNull(history.getBalance("mary", 2));
+        assertEquals(30, history.getBalance("mary", 3));
+        assertEquals(30, history.getBalance("mary", 5));
+        assertEquals(3000, history.getBalance("mary", 1000));
+        assertNull(history.getBalance("unknown", 10));
+        assertEquals(100, history.getVersionCount("mary"));
+        assertEquals(1, history.getAccounts(49).size());
+        assertEquals(7, history.getAccounts(60).get("bob").getBalance());
+        assertThrows(IllegalArgumentException.class, () -> history.record("mary", 10, 0));
+
+        //Total follows the latest balances
+        assertEquals(2, history.getAccountCount());
+        assertEquals(3000 + 7, history.getTotalBalance());
+        history.record("mary", 300, 100);
+        assertEquals(100 + 7, history.getTotalBalance());
+        assertEquals(600, history.getBalances(60).get("mary"));
+        assertEquals(1, history.getBalances(49).size());
+    }
+
     // Test for MerkleTree.java:
     @Test
     public void testGetSHA2HexValueException() throws NoSuchAlgorithmException {
@@ -140,6 +247,105 @@ public class CompleteTest {
         }
     }
 
+    @Test
+    public void testMerkleTrees_legacyRoot() {
+        for (int size = 1; size <= 17; size++) {
+            List<String> txList = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                txList.add("Transaction Id: " + i + ", Note: \u00e9t\u00e9");
+            }
+
+            MerkleTrees merkleTrees = new MerkleTrees(txList);
+            merkleTrees.merkle_tree();
+
+            // Reference string based construction
+            List<String> level = txList;
+            do {
+                List<String> newLevel = new ArrayList<>();
+                for (int i = 0; i < level.size(); i += 2) {
+                    String right = i + 1 < level.size() ? level.get(i + 1) : "";
+                    newLevel.add(merkleTrees.getSHA2HexValue(level.get(i) + right));
+                }
+                level = newLevel;
+            } while (level.size() != 1);
+
+            assertEquals(level.get(0), merkleTrees.getRoot());
+            assertEquals(merkleTrees.getRoot(), MerkleTrees.toHex(merkleTrees.getRootBytes()));
+        }
+    }
+
+    @Test
+    public void testMerkleTrees_parallelRoot() {
+        for (MerkleTrees.Mode mode : MerkleTrees.Mode.values()) {
+            List<String> txList = new ArrayList<>();
+            for (int size = 1; size <= 70; size++) {
+                txList.add("Transaction Id: " + size);
+
+                MerkleTrees sequential = new MerkleTrees(txList, mode);
+                sequential.setParallelThreshold(Integer.MAX_VALUE);
+                sequential.merkle_tree();
+
+                MerkleTrees parallel = new MerkleTrees(txList, mode);
+                parallel.setParallelThreshold(2);
+                parallel.merkle_tree();
+
+                assertEquals(sequential.getRoot(), parallel.getRoot());
+            }
+        }
+    }
+
+    @Test
+    public void testMerkleTrees_binaryRoot() throws NoSuchAlgorithmException {
+        MerkleTrees merkleTrees = new MerkleTrees(List.of("seed", "first", "second"), MerkleTrees.Mode.BINARY);
+        merkleTrees.merkle_tree();
+
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        byte[] seed = md.digest("seed".getBytes());
+        byte[] first = md.digest("first".getBytes());
+        byte[] second = md.digest("second".getBytes());
+        md.update(seed);
+        md.update(first);
+        byte[] left = md.digest();
+        byte[] right = md.digest(second);
+        md.update(left);
+        md.update(right);
+
+        assertEquals(MerkleTrees.toHex(md.digest()), merkleTrees.getRoot());
+    }
+
+    @Test
+    public void testMerkleTrees_proof() {
+        for (MerkleTrees.Mode mode : MerkleTrees.Mode.values()) {
+            for (int size = 1; size <= 17; size++) {
+                List<String> leaves = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    leaves.add("leaf" + i);
+                }
+                MerkleTrees merkleTrees = new MerkleTrees(leaves, mode);
+                merkleTrees.merkle_tree();
+
+                for (int i = 0; i < size; i++) {
+                    MerkleProof proof = merkleTrees.getProof(i);
+                    assertEquals("leaf" + i, proof.getLeaf());
+                    assertTrue(MerkleProof.verify(proof, merkleTrees.getRoot()));
+                }
+
+                MerkleProof forged = new MerkleProof(mode, "forged", null, true, new byte[0][], new boolean[0]);
+                assertFalse(MerkleProof.verify(forged, merkleTrees.getRoot()));
+            }
+        }
+
+        // Parallel trees keep no levels and are rebuilt for the proof
+        List<String> leaves = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            leaves.add("leaf" + i);
+        }
+        MerkleTrees merkleTrees = new MerkleTrees(leaves);
+        merkleTrees.setParallelThreshold(4);
+        merkleTrees.merkle_tree();
+        assertTrue(MerkleProof.verify(merkleTrees.getProof(57), merkleTrees.getRoot()));
+    }
+
     /*
      * Transaction.java
      */
@@ -191,6 +397,60 @@ public class CompleteTest {
         assertEquals(transactionInfo, transaction.toString());
     }
 
+    /*
+     * LedgerCodec.java
+     */
+
+    @Test
+    public void testLedgerCodec_transaction() {
+        // Arrange
+        Account mary = new Account("mary", 100);
+        Account sergey = new Account("sérgey", 100);
+        Transaction transaction = new Transaction("1", 60, 10, null, mary, sergey);
+        LedgerCodec codec = new LedgerCodec(16);
+
+        // Act
+        ByteBuffer record = codec.startRecord().putTransaction(transaction).putAccount("mary", 5_000_000_000L)
+                .finishRecord();
+        int length = record.getInt();
+        int checksum = record.getInt();
+        byte[] payload = new byte[length];
+        record.get(payload);
+        ByteBuffer decoded = ByteBuffer.wrap(payload);
+        LedgerCodec.checkVersion(decoded);
+        Transaction copy = LedgerCodec.getTransaction(decoded);
+
+        // Assert
+        assertTrue(LedgerCodec.isIntact(payload, checksum));
+        assertEquals(transaction.toString(), copy.toString());
+        assertEquals("mary", LedgerCodec.getString(decoded));
+        assertEquals(5_000_000_000L, decoded.getLong());
+        assertFalse(decoded.hasRemaining());
+        payload[0]++;
+        assertFalse(LedgerCodec.isIntact(payload, checksum));
+        assertThrows(IllegalStateException.class, () -> LedgerCodec.checkVersion(ByteBuffer.wrap(payload)));
+    }
+
+    @Test
+    public void testLedgerCodec_sizeOf() {
+        Account mary = new Account("mary", 100);
+        Account sergey = new Account("sérgey", 100);
+        Transaction transaction = new Transaction("1", 60, 10, "note € 😀", mary, sergey);
+
+        int encoded = new LedgerCodec(16).putByte(LedgerCodec.VERSION).putTransaction(transaction)
+                .getBuffer().position();
+
+        assertEquals(encoded, LedgerCodec.sizeOf(transaction));
+        assertEquals(encoded, new BlockSealPolicy(10, 1024, 0).sizeOf(transaction));
+        assertEquals(0, BlockSealPolicy.DEFAULT.sizeOf(transaction));
+
+        //Unpaired surrogates are encoded as one byte each
+        Transaction unpaired = new Transaction("2", 60, 10, "a\uD800b\uDC00", mary, sergey);
+        encoded = new LedgerCodec(16).putByte(LedgerCodec.VERSION).putTransaction(unpaired)
+                .getBuffer().position();
+        assertEquals(encoded, LedgerCodec.sizeOf(unpaired));
+    }
+
     /*
      * Ledger.java
      */
@@ -238,4 +498,254 @@ public class CompleteTest {
         // Assert
         assertEquals("chapman", ledger.getSeed());
     }
+
+    @Test
+    public void testLedger_processTransactions() throws LedgerException {
+        ledger.reset();
+        Account mary = ledger.createAccount("mary");
+        Account master = ledger.getUncommittedBlock().getAccount("master");
+
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            transactions.add(new Transaction("batch" + i, 100, 10, "batch", master, mary));
+        }
+        transactions.add(new Transaction("batch3", 100, 10, "duplicate", master, mary));
+        transactions.add(new Transaction("low-fee", 100, 5, "low fee", master, mary));
+
+        List<TransactionResult> results = ledger.processTransactions(transactions);
+
+        assertEquals(27, results.size());
+        assertTrue(results.get(24).isProcessed());
+        assertEquals("Transaction Id Must Be Unique", results.get(25).getException().getReason());
+        assertEquals("Transaction Fee Must Be Greater Than 10", results.get(26).getException().getReason());
+        assertEquals(2, ledger.getNumberOfBlocks());
+        assertEquals(2000, ledger.getAccountBalance("mary"));
+        ledger.validate();
+        ledger.reset();
+    }
+
+    @Test
+    public void testLedger_validatedThrough() throws LedgerException {
+        ledger.reset();
+        Account mary = ledger.createAccount("mary");
+        Account master = ledger.getUncommittedBlock().getAccount("master");
+
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            transactions.add(new Transaction("cursor" + i, 100, 10, "cursor", master, mary));
+        }
+        ledger.processTransactions(transactions);
+        assertEquals(0, ledger.getValidatedThrough());
+        assertEquals(200, ledger.getTotalFees());
+        ledger.validate();
+        assertEquals(2, ledger.getValidatedThrough());
+
+        List<Transaction> nextTransactions = new ArrayList<>();
+        for (int i = 25; i < 30; i++) {
+            nextTransactions.add(new Transaction("cursor" + i, 100, 10, "cursor", master, mary));
+        }
+        ledger.processTransactions(nextTransactions);
+        assertEquals(2, ledger.getValidatedThrough());
+        ledger.validate();
+        assertEquals(3, ledger.getValidatedThrough());
+        assertEquals(300, ledger.getTotalFees());
+        ledger.reset();
+    }
+
+    @Test
+    public void testLedger_blockSealPolicy() throws Exception {
+        ledger.reset();
+        Account mary = ledger.createAccount("mary");
+        Account master = ledger.getUncommittedBlock().getAccount("master");
+
+        try {
+            ledger.setBlockSealPolicy(new BlockSealPolicy(3, 0, 0));
+            for (int i = 0; i < 7; i++) {
+                ledger.processTransaction(new Transaction("count" + i, 100, 10, "count", master, mary));
+            }
+            assertEquals(2, ledger.getNumberOfBlocks());
+
+            ledger.setBlockSealPolicy(new BlockSealPolicy(100, 0, 50));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (ledger.getNumberOfBlocks() != 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(3, ledger.getNumberOfBlocks());
+            assertEquals(1, ledger.getBlock(3).getTransactionList().size());
+            ledger.validate();
+        } finally {
+            ledger.setBlockSealPolicy(BlockSealPolicy.DEFAULT);
+            ledger.reset();
+        }
+    }
+
+    @Test
+    public void testLedger_lowerBlockSealPolicy() throws Exception {
+        ledger.reset();
+        Account mary = ledger.createAccount("mary");
+        Account master = ledger.getUncommittedBlock().getAccount("master");
+
+        try {
+            for (int i = 0; i < 15; i++) {
+                ledger.processTransaction(new Transaction("lower" + i, 100, 10, "lower", master, mary));
+            }
+
+            //Uncommitted block holds 5 transactions, more than the new policy allows
+            ledger.setBlockSealPolicy(new BlockSealPolicy(3, 0, 0));
+            assertEquals(1, ledger.getNumberOfBlocks());
+
+            for (int i = 15; i < 23; i++) {
+                ledger.processTransaction(new Transaction("lower" + i, 100, 10, "lower", master, mary));
+            }
+            assertEquals(3, ledger.getNumberOfBlocks());
+            assertEquals(10, ledger.getBlock(2).getTransactionList().size());
+            assertEquals(BlockSealPolicy.DEFAULT, ledger.getBlock(2).getSealPolicy());
+            assertEquals(3, ledger.getBlock(3).getTransactionList().size());
+            ledger.validate();
+        } finally {
+            ledger.setBlockSealPolicy(BlockSealPolicy.DEFAULT);
+            ledger.reset();
+        }
+    }
+
+    @Test
+    public void testLedger_lowerBlockSealPolicyBatch() throws Exception {
+        ledger.reset();
+        Account mary = ledger.createAccount("mary");
+        Account master = ledger.getUncommittedBlock().getAccount("master");
+        BlockSealPolicy sizeLimited = new BlockSealPolicy(100, 200, 0);
+
+        try {
+            ledger.setBlockSealPolicy(sizeLimited);
+            for (int i = 0; i < 3; i++) {
+                ledger.processTransaction(new Transaction("batch" + i, 100, 10, "lower", master, mary));
+            }
+
+            //Pending block keeps the size limited policy, the following blocks hold 2 transactions
+            ledger.setBlockSealPolicy(new BlockSealPolicy(2, 0, 0));
+            List<Transaction> transactions = new ArrayList<>();
+            transactions.add(new Transaction("batch3", 100, 10, "x".repeat(500), master, mary));
+            for (int i = 4; i < 8; i++) {
+                transactions.add(new Transaction("batch" + i, 100, 10, "lower", master, mary));
+            }
+            for (TransactionResult result : ledger.processTransactions(transactions)) {
+                assertTrue(result.isProcessed());
+            }
+
+            //Large transaction does not fit the pending block and goes to a block under the new policy
+            assertEquals(3, ledger.getBlock(1).getTransactionList().size());
+            assertEquals(sizeLimited, ledger.getBlock(1).getSealPolicy());
+            assertEquals(2, ledger.getBlock(2).getTransactionList().size());
+            assertEquals(2, ledger.getBlock(3).getTransactionList().size());
+            assertEquals(1, ledger.getUncommittedBlock().getTransactionList().size());
+            ledger.validate();
+        } finally {
+            ledger.setBlockSealPolicy(BlockSealPolicy.DEFAULT);
+            ledger.reset();
+        }
+    }
+
+    @Test
+    public void testLedger_audit() throws LedgerException {
+        ledger.reset();
+        Account mary = ledger.createAccount("mary");
+        Account master = ledger.getUncommittedBlock().getAccount("master");
+
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            transactions.add(new Transaction("audit" + i, 100, 10, "audit", master, mary));
+        }
+        ledger.processTransactions(transactions);
+        assertTrue(ledger.audit().isEmpty());
+
+        ledger.getBlock(2).getTransactionList().get(3).setNote("tampered");
+        ledger.getBlock(4).setPreviousHash("tampered");
+
+        Map<Integer, String> failures = ledger.audit();
+        assertEquals(2, failures.size());
+        assertEquals("Merkle Root Mismatch", failures.get(2));
+        assertEquals("Hash Is Inconsistent", failures.get(4));
+        ledger.reset();
+    }
+
+    @Test
+    public void testLedger_inclusionProof() throws LedgerException {
+        ledger.reset();
+        Account mary = ledger.createAccount("mary");
+        Account master = ledger.getUncommittedBlock().getAccount("master");
+
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            transactions.add(new Transaction("proof" + i, 100, 10, "proof", master, mary));
+        }
+        ledger.processTransactions(transactions);
+
+        for (int i = 0; i < 10; i++) {
+            MerkleProof proof = ledger.getInclusionProof("proof" + i);
+            assertEquals(ledger.getTransaction("proof" + i).toString(), proof.getLeaf());
+            assertTrue(Ledger.verifyInclusionProof(proof, ledger.getBlock(1).getHash()));
+        }
+
+        LedgerException uncommitted = assertThrows(LedgerException.class, () -> ledger.getInclusionProof("proof12"));
+        assertEquals("Transaction Is Not Committed", uncommitted.getReason());
+        LedgerException missing = assertThrows(LedgerException.class, () -> ledger.getInclusionProof("missing"));
+        assertEquals("Transaction Does Not Exist", missing.getReason());
+        ledger.reset();
+    }
+
+    @Test
+    public void testLedger_binaryMerkleMode() throws LedgerException {
+        ledger.reset();
+        Account mary = ledger.createAccount("mary");
+        Account master = ledger.getUncommittedBlock().getAccount("master");
+        ledger.processTransaction(new Transaction("legacy0", 100, 10, "mode", master, mary));
+        assertThrows(LedgerException.class, () -> ledger.setMerkleMode(MerkleTrees.Mode.BINARY));
+
+        ledger.reset();
+        ledger.setMerkleMode(MerkleTrees.Mode.BINARY);
+        try {
+            mary = ledger.createAccount("mary");
+            master = ledger.getUncommittedBlock().getAccount("master");
+            List<Transaction> transactions = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                transactions.add(new Transaction("binary" + i, 100, 10, "mode", master, mary));
+            }
+            ledger.processTransactions(transactions);
+
+            String hash = ledger.getBlock(1).getHash();
+            MerkleProof proof = ledger.getInclusionProof("binary3");
+            assertEquals(MerkleTrees.Mode.BINARY, proof.getMode());
+            assertTrue(Ledger.verifyInclusionProof(proof, hash));
+            assertEquals("binary3", LedgerCodec.getTransaction(ByteBuffer.wrap(proof.getEncodedLeaf(), 1,
+                    proof.getEncodedLeaf().length - 1)).getTransactionId());
+            assertTrue(ledger.audit().isEmpty());
+        } finally {
+            ledger.reset();
+            ledger.setMerkleMode(MerkleTrees.Mode.LEGACY);
+        }
+    }
+
+    @Test
+    public void testLedger_historicalBalance() throws LedgerException {
+        ledger.reset();
+        Account mary = ledger.createAccount("mary");
+        Account master = ledger.getUncommittedBlock().getAccount("master");
+
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            transactions.add(new Transaction("history" + i, 100, 10, "history", master, mary));
+        }
+        ledger.processTransactions(transactions);
+
+        for (int blockNumber = 1; blockNumber <= 3; blockNumber++) {
+            assertEquals(blockNumber * 1000, ledger.getAccountBalance("mary", blockNumber));
+            assertEquals(ledger.getBlock(blockNumber).getAccount("master").getBalance(),
+                    ledger.getAccountBalance("master", blockNumber));
+        }
+        LedgerException missing = assertThrows(LedgerException.class, () -> ledger.getAccountBalance("bob", 2));
+        assertEquals("Account Does Not Exist", missing.getReason());
+        LedgerException uncommitted = assertThrows(LedgerException.class, () -> ledger.getAccountBalance("mary", 4));
+        assertEquals("Block Is Not Committed", uncommitted.getReason());
+        ledger.reset();
+    }
 }
@@ -0,0 +1,197 @@
+package com.se300.ledger.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.se300.ledger.Account;
+import com.se300.ledger.Ledger;
+import com.se300.ledger.LedgerException;
+import com.se300.ledger.LedgerSnapshot;
+import com.se300.ledger.Transaction;
+
+/**
+ * Stress tests for concurrent transaction processing
+ */
+public class ConcurrencyTest {
+
+    private static final int ACCOUNTS = 8;
+    private static final int THREADS = 8;
+    private static final int TRANSFERS = 2000;
+
+    private Ledger ledger;
+
+    @BeforeEach
+    public void setUp() throws LedgerException {
+        ledger = Ledger.getInstance("test", "test ledger 2023", "chapman");
+        ledger.reset();
+
+        for (int i = 0; i < ACCOUNTS; i++) {
+            ledger.createAccount("account" + i);
+        }
+
+        //Fund accounts and commit the first block
+        for (int i = 0; i < 10; i++) {
+            Account master = ledger.getUncommittedBlock().getAccount("master");
+            Account receiver = ledger.getUncommittedBlock().getAccount("account" + (i % ACCOUNTS));
+            ledger.processTransaction(new Transaction("fund" + i, 10000, 10, "fund account", master, receiver));
+        }
+    }
+
+    @Test
+    public void testConcurrentTransfers() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Integer>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(thread);
+                int processed = 0;
+                for (int i = 0; i < TRANSFERS; i++) {
+                    Account payer = ledger.getUncommittedBlock().getAccount("account" + random.nextInt(ACCOUNTS));
+                    Account receiver = ledger.getUncommittedBlock().getAccount("account" + random.nextInt(ACCOUNTS));
+                    try {
+                        ledger.processTransaction(new Transaction(thread + "-" + i, random.nextInt(50), 10,
+                                "stress", payer, receiver));
+                        processed++;
+                    } catch (LedgerException e) {
+                        assertEquals("Payer Does Not Have Required Funds", e.getReason());
+                    }
+                }
+                return processed;
+            }));
+        }
+
+        int processed = 10;
+        for (Future<Integer> future : futures) {
+            processed += future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(processed / 10, ledger.getNumberOfBlocks());
+        assertDoesNotThrow(() -> ledger.validate());
+    }
+
+    @Test
+    public void testConcurrentDuplicateTransactionId() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            tasks.add(() -> {
+                Account payer = ledger.getUncommittedBlock().getAccount("account0");
+                Account receiver = ledger.getUncommittedBlock().getAccount("account1");
+                try {
+                    ledger.processTransaction(new Transaction("duplicate", 1, 10, "stress", payer, receiver));
+                    return true;
+                } catch (LedgerException e) {
+                    return false;
+                }
+            });
+        }
+
+        int accepted = 0;
+        for (Future<Boolean> future : executor.invokeAll(tasks)) {
+            accepted += future.get() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        assertEquals(1, accepted);
+    }
+
+    @Test
+    public void testAsynchronousSealing() throws Exception {
+
+        ledger.setAsynchronousSealing(true);
+        try {
+            for (int i = 0; i < 100; i++) {
+                Account payer = ledger.getUncommittedBlock().getAccount("account" + (i % ACCOUNTS));
+                Account receiver = ledger.getUncommittedBlock().getAccount("account" + ((i + 1) % ACCOUNTS));
+                ledger.processTransaction(new Transaction("async" + i, 5, 10, "async", payer, receiver));
+                assertNotNull(ledger.getTransaction("async" + i));
+            }
+            ledger.awaitSealing();
+        } finally {
+            ledger.setAsynchronousSealing(false);
+        }
+
+        assertEquals(11, ledger.getNumberOfBlocks());
+        for (int blockNumber = 2; blockNumber <= 11; blockNumber++) {
+            assertEquals(ledger.getBlock(blockNumber - 1).getHash(), ledger.getBlock(blockNumber).getPreviousHash());
+        }
+        assertEquals(ledger.getBlock(11).getHash(), ledger.getUncommittedBlock().getPreviousHash());
+        assertDoesNotThrow(() -> ledger.validate());
+    }
+
+    @Test
+    public void testSnapshotReads() throws Exception {
+
+        LedgerSnapshot first = ledger.snapshot();
+        Integer firstBalance = first.balance("account0");
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS - 1; t++) {
+            int thread = t;
+            writers.add(executor.submit(() -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < TRANSFERS; i++) {
+                    Account payer = ledger.getUncommittedBlock().getAccount("account" + random.nextInt(ACCOUNTS));
+                    Account receiver = ledger.getUncommittedBlock().getAccount("account" + random.nextInt(ACCOUNTS));
+                    try {
+                        ledger.processTransaction(new Transaction(thread + "-" + i, random.nextInt(50), 10,
+                                "snapshot", payer, receiver));
+                    } catch (LedgerException e) {
+                        assertEquals("Payer Does Not Have Required Funds", e.getReason());
+                    }
+                }
+                return null;
+            }));
+        }
+
+        //Every snapshot read while blocks are committed holds the whole supply
+        Future<Integer> reader = executor.submit(() -> {
+            int reads = 0;
+            int blockNumber = 0;
+            while (!writers.stream().allMatch(Future::isDone)) {
+                LedgerSnapshot snapshot = ledger.snapshot();
+                long total = snapshot.getTotalFees();
+                for (int balance : snapshot.getBalances().values()) {
+                    total += balance;
+                }
+                assertEquals(Integer.MAX_VALUE, total);
+                assertTrue(snapshot.getBlockNumber() >= blockNumber);
+                blockNumber = snapshot.getBlockNumber();
+                reads++;
+            }
+            return reads;
+        });
+
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        assertTrue(reader.get() > 0);
+        executor.shutdown();
+
+        assertEquals(firstBalance, first.balance("account0"));
+        assertEquals(1, first.getBlockNumber());
+        assertEquals(ledger.getNumberOfBlocks(), ledger.snapshot().getBlockNumber());
+        assertEquals(ledger.getAccountBalance("account0"), ledger.snapshot().balance("account0"));
+        assertDoesNotThrow(() -> ledger.validate());
+    }
+}
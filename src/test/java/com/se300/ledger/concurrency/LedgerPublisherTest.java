@@ -0,0 +1,150 @@
+package com.se300.ledger.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.se300.ledger.Account;
+import com.se300.ledger.Block;
+import com.se300.ledger.Ledger;
+import com.se300.ledger.LedgerException;
+import com.se300.ledger.LedgerPublisher;
+import com.se300.ledger.LedgerRegistry;
+import com.se300.ledger.Transaction;
+
+/**
+ * Tests for streaming committed blocks and transactions to Flow subscribers
+ */
+public class LedgerPublisherTest {
+
+    private LedgerRegistry registry;
+    private Ledger ledger;
+
+    @BeforeEach
+    public void setUp() throws LedgerException {
+        registry = new LedgerRegistry();
+        ledger = registry.createLedger("published", "published ledger", "chapman");
+        ledger.createAccount("mary");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    public void testSubscribers() throws Exception {
+        LedgerPublisher publisher = ledger.getPublisher();
+        assertSame(publisher, ledger.getPublisher());
+
+        Collector<Block> blocks = new Collector<>(Long.MAX_VALUE, 3);
+        Collector<Transaction> transactions = new Collector<>(Long.MAX_VALUE, 30);
+        publisher.getBlockPublisher().subscribe(blocks);
+        publisher.getTransactionPublisher().subscribe(transactions);
+
+        transfer(0, 35);
+        assertTrue(blocks.received.await(10, TimeUnit.SECONDS));
+        assertTrue(transactions.received.await(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, blocks.items.get(i).getBlockNumber());
+            assertEquals(ledger.getBlock(i + 1).getHash(), blocks.items.get(i).getHash());
+        }
+        for (int i = 0; i < 30; i++) {
+            assertEquals("tx" + i, transactions.items.get(i).getTransactionId());
+        }
+
+        //Closing the publisher completes the subscriptions
+        ledger.shutdown();
+        assertTrue(blocks.completed.await(10, TimeUnit.SECONDS));
+        assertTrue(transactions.completed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSlowSubscriber() throws Exception {
+        try (LedgerPublisher publisher = new LedgerPublisher(4)) {
+            ledger.addBlockListener(publisher);
+
+            //Subscriber asking for a single block never takes the others off its buffer
+            Collector<Block> stalled = new Collector<>(1, 1);
+            publisher.getBlockPublisher().subscribe(stalled);
+
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> transfer(0, 200));
+            assertTrue(stalled.received.await(10, TimeUnit.SECONDS));
+            assertEquals(1, stalled.items.size());
+            assertTrue(publisher.getDroppedBlockCount() >= 1);
+            assertEquals(20, ledger.getNumberOfBlocks());
+
+            //Missed blocks end the stream with an error instead of leaving a gap in it
+            assertTrue(stalled.completed.await(10, TimeUnit.SECONDS));
+            assertTrue(stalled.error instanceof LedgerException);
+            assertEquals("Subscriber Buffer Is Full", ((LedgerException) stalled.error).getReason());
+            assertEquals(0, publisher.getSubscriberCount());
+
+            //Subscriber catches up from the ledger
+            int next = stalled.items.get(0).getBlockNumber() + 1;
+            assertEquals(2, next);
+            assertEquals(2, ledger.getBlock(next).getBlockNumber());
+            ledger.removeBlockListener(publisher);
+        }
+    }
+
+    private void transfer(int from, int to) throws LedgerException {
+        for (int i = from; i < to; i++) {
+            Account master = ledger.getUncommittedBlock().getAccount("master");
+            Account mary = ledger.getUncommittedBlock().getAccount("mary");
+            ledger.processTransaction(new Transaction("tx" + i, 100, 10, "published", master, mary));
+        }
+    }
+
+    /**
+     * Subscriber collecting the items it requests
+     */
+    private static class Collector<T> implements Flow.Subscriber<T> {
+
+        private final long demand;
+        private final List<T> items = new CopyOnWriteArrayList<>();
+        private final CountDownLatch received;
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile Throwable error;
+
+        Collector(long demand, int expected) {
+            this.demand = demand;
+            this.received = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(demand);
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+            received.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.se300.ledger.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.se300.ledger.Account;
+import com.se300.ledger.Ledger;
+import com.se300.ledger.LedgerException;
+import com.se300.ledger.LedgerRegistry;
+import com.se300.ledger.Transaction;
+
+/**
+ * Tests for independent ledgers held by a LedgerRegistry
+ */
+public class LedgerRegistryTest {
+
+    private static final int TENANTS = 4;
+
+    private LedgerRegistry registry;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new LedgerRegistry();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    public void testIndependentLedgers() throws LedgerException {
+        Ledger first = registry.createLedger("first", "first tenant", "alpha");
+        Ledger second = registry.getOrCreateLedger("second", "second tenant", "beta");
+
+        assertSame(second, registry.getOrCreateLedger("second", "ignored", "ignored"));
+        assertSame(first, registry.getLedger("first"));
+        assertNotSame(Ledger.getInstance("test", "test ledger 2023", "chapman"), first);
+        assertThrows(LedgerException.class, () -> registry.createLedger("first", "again", "alpha"));
+        assertEquals(Set.of("first", "second"), registry.getLedgerNames());
+
+        first.createAccount("mary");
+        transfer(first, "mary", 10, "tx");
+        assertEquals(10000, first.getAccountBalance("mary"));
+        assertThrows(LedgerException.class, () -> second.getAccountBalance("mary"));
+        assertEquals(0, second.getNumberOfBlocks());
+
+        //Same transaction ids are accepted by another ledger
+        second.createAccount("mary");
+        transfer(second, "mary", 10, "tx");
+        assertNotEquals(first.getBlock(1).getHash(), second.getBlock(1).getHash());
+
+        registry.removeLedger("first");
+        assertThrows(LedgerException.class, () -> registry.getLedger("first"));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testParallelLedgers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(TENANTS);
+        List<Future<Ledger>> futures = new ArrayList<>();
+        for (int t = 0; t < TENANTS; t++) {
+            String name = "tenant" + t;
+            futures.add(executor.submit(() -> {
+                Ledger ledger = registry.createLedger(name, "tenant ledger", "seed");
+                ledger.createAccount("mary");
+                transfer(ledger, "mary", 500, "tx");
+                return ledger;
+            }));
+        }
+
+        String hash = null;
+        for (Future<Ledger> future : futures) {
+            Ledger ledger = future.get();
+            assertEquals(50, ledger.getNumberOfBlocks());
+            assertEquals(500000, ledger.getAccountBalance("mary"));
+            assertDoesNotThrow(() -> ledger.validate());
+            //Same seed and transactions lead to the same chain
+            if (hash != null) {
+                assertEquals(hash, ledger.getBlock(50).getHash());
+            }
+            hash = ledger.getBlock(50).getHash();
+        }
+        executor.shutdown();
+    }
+
+    private static void transfer(Ledger ledger, String receiver, int count, String prefix) throws LedgerException {
+        for (int i = 0; i < count; i++) {
+            Account master = ledger.getUncommittedBlock().getAccount("master");
+            Account receiverAccount = ledger.getUncommittedBlock().getAccount(receiver);
+            ledger.processTransaction(new Transaction(prefix + i, 1000, 10, "tenant", master, receiverAccount));
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.se300.ledger.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.se300.ledger.Account;
+import com.se300.ledger.LedgerException;
+import com.se300.ledger.ShardedLedger;
+import com.se300.ledger.Transaction;
+
+/**
+ * Tests for accounts partitioned over ledger shards and transfers between shards
+ */
+public class ShardedLedgerTest {
+
+    private static final int SHARDS = 4;
+    private static final int ACCOUNTS = 16;
+    private static final int THREADS = 4;
+    private static final int TRANSFERS = 500;
+
+    private ShardedLedger ledger;
+
+    @BeforeEach
+    public void setUp() throws LedgerException {
+        ledger = new ShardedLedger("sharded", "sharded ledger", "chapman", SHARDS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            ledger.createAccount("account" + i);
+            ledger.processTransaction(new Transaction("fund" + i, 10000, 10, "fund account",
+                    new Account("master", 0), new Account("account" + i, 0)));
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ledger.shutdown();
+    }
+
+    @Test
+    public void testCrossShardTransfer() throws LedgerException {
+        String payer = "account0";
+        String receiver = findAccount(ledger.shardOf(payer), false);
+
+        ledger.processTransaction(new Transaction("cross", 500, 10, "cross shard",
+                new Account(payer, 0), new Account(receiver, 0)));
+
+        assertEquals(10000 - 510, getBalance(payer));
+        assertEquals(10000 + 500, getBalance(receiver));
+        assertNotNull(ledger.getTransaction("cross"));
+        assertNotNull(ledger.getTransaction("cross#credit"));
+        assertTrue(ledger.getCrossShardTransferCount() > 0);
+        assertThrows(LedgerException.class, () -> ledger.createAccount("~escrow"));
+        assertThrows(LedgerException.class, () -> ledger.processTransaction(new Transaction("reserved", 1, 10,
+                "reserved", new Account("~reserve", 0), new Account(payer, 0))));
+
+        //Every shard keeps its own accounts
+        assertNull(ledger.getShard(ledger.shardOf(receiver)).getUncommittedBlock().getAccount(payer));
+        assertDoesNotThrow(() -> ledger.validate());
+    }
+
+    @Test
+    public void testRefund() throws LedgerException {
+        String payer = "account0";
+        String receiver = findAccount(ledger.shardOf(payer), false);
+
+        //Credit leg fails on the receiver shard, as its id is taken there
+        Account receiverAccount = new Account(receiver, 0);
+        ledger.getShard(ledger.shardOf(receiver)).processTransaction(new Transaction("taken#credit", 1, 10,
+                "occupy", receiverAccount, receiverAccount));
+
+        LedgerException e = assertThrows(LedgerException.class, () -> ledger.processTransaction(
+                new Transaction("taken", 500, 10, "refund", new Account(payer, 0), receiverAccount)));
+        assertEquals("Transaction Id Must Be Unique", e.getReason());
+
+        //Only the fee is charged
+        assertEquals(10000 - 10, getBalance(payer));
+        assertEquals(10000 - 10, getBalance(receiver));
+        assertEquals(1, ledger.getRefundedTransferCount());
+        assertDoesNotThrow(() -> ledger.validate());
+    }
+
+    @Test
+    public void testFailedRefund() throws LedgerException {
+        String payer = "account0";
+        String receiver = findAccount(ledger.shardOf(payer), false);
+
+        //Both the credit leg and the refund leg fail, as their ids are taken
+        Account payerAccount = new Account(payer, 0);
+        Account receiverAccount = new Account(receiver, 0);
+        ledger.getShard(ledger.shardOf(receiver)).processTransaction(new Transaction("stuck#credit", 1, 10,
+                "occupy", receiverAccount, receiverAccount));
+        ledger.getShard(ledger.shardOf(payer)).processTransaction(new Transaction("stuck#refund", 1, 10,
+                "occupy", payerAccount, payerAccount));
+
+        LedgerException e = assertThrows(LedgerException.class, () -> ledger.processTransaction(
+                new Transaction("stuck", 500, 10, "refund", payerAccount, receiverAccount)));
+        assertEquals("Process Transaction", e.getAction());
+        assertEquals("Transaction Id Must Be Unique", e.getReason());
+        assertEquals(1, e.getSuppressed().length);
+
+        //Refund waits in escrow to be retried
+        assertEquals(1, ledger.getPendingLegCount());
+        assertEquals(10000 - 520, getBalance(payer));
+        assertThrows(LedgerException.class, () -> ledger.validate());
+        assertEquals(1, ledger.getPendingLegCount());
+    }
+
+    @Test
+    public void testFailedSettlement() throws LedgerException {
+        String payer = "account0";
+        String receiver = findAccount(ledger.shardOf(payer), false);
+
+        //Settle leg fails on the payer shard, as its id is taken there
+        Account payerAccount = new Account(payer, 0);
+        ledger.getShard(ledger.shardOf(payer)).processTransaction(new Transaction("late#settle", 1, 10,
+                "occupy", payerAccount, payerAccount));
+
+        //Receiver has been credited, so the transfer succeeds
+        long transfers = ledger.getCrossShardTransferCount();
+        assertEquals("late", ledger.processTransaction(new Transaction("late", 500, 10, "settle",
+                payerAccount, new Account(receiver, 0))));
+        assertEquals(10000 + 500, getBalance(receiver));
+        assertEquals(transfers + 1, ledger.getCrossShardTransferCount());
+        assertEquals(1, ledger.getPendingLegCount());
+        assertThrows(LedgerException.class, () -> ledger.validate());
+    }
+
+    @Test
+    public void testTransactionIds() throws LedgerException {
+        String payer = "account0";
+        String sameShard = findAccount(ledger.shardOf(payer), true);
+        String otherPayer = findAccount(ledger.shardOf(payer), false);
+
+        //Ids of transfer legs and reserved ids are rejected
+        LedgerException e = assertThrows(LedgerException.class, () -> ledger.processTransaction(
+                new Transaction("leg#credit", 1, 10, "leg", new Account(payer, 0), new Account(sameShard, 0))));
+        assertEquals("Transaction Id Is Reserved", e.getReason());
+        e = assertThrows(LedgerException.class, () -> ledger.processTransaction(
+                new Transaction("~reserve", 1, 10, "leg", new Account(payer, 0), new Account(otherPayer, 0))));
+        assertEquals("Transaction Id Is Reserved", e.getReason());
+
+        //Ids are unique across shards
+        ledger.processTransaction(new Transaction("once", 1, 10, "once",
+                new Account(payer, 0), new Account(sameShard, 0)));
+        e = assertThrows(LedgerException.class, () -> ledger.processTransaction(new Transaction("once", 1, 10,
+                "twice", new Account(otherPayer, 0), new Account(otherPayer, 0))));
+        assertEquals("Transaction Id Must Be Unique", e.getReason());
+        assertEquals(10000, getBalance(otherPayer));
+        assertEquals("once", ledger.getTransaction("once").getNote());
+
+        //Id of a rejected transaction stays free
+        assertThrows(LedgerException.class, () -> ledger.processTransaction(new Transaction("retry", 100000, 10,
+                "retry", new Account(payer, 0), new Account(otherPayer, 0))));
+        assertDoesNotThrow(() -> ledger.processTransaction(new Transaction("retry", 100, 10,
+                "retry", new Account(payer, 0), new Account(otherPayer, 0))));
+        assertDoesNotThrow(() -> ledger.validate());
+    }
+
+    @Test
+    public void testConcurrentTransfers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < TRANSFERS; i++) {
+                    Account payer = new Account("account" + random.nextInt(ACCOUNTS), 0);
+                    Account receiver = new Account("account" + random.nextInt(ACCOUNTS), 0);
+                    try {
+                        ledger.processTransaction(new Transaction(thread + "-" + i, random.nextInt(100), 10,
+                                "stress", payer, receiver));
+                    } catch (LedgerException e) {
+                        assertEquals("Payer Does Not Have Required Funds", e.getReason());
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertDoesNotThrow(() -> ledger.validate());
+        assertTrue(ledger.getCrossShardTransferCount() > TRANSFERS);
+        assertEquals(ACCOUNTS + 1, ledger.getAccountBalances().size());
+    }
+
+    private String findAccount(int shard, boolean sameShard) {
+        for (int i = 1; i < ACCOUNTS; i++) {
+            if ((ledger.shardOf("account" + i) == shard) == sameShard) {
+                return "account" + i;
+            }
+        }
+        throw new IllegalStateException("No Account Found");
+    }
+
+    private int getBalance(String address) {
+        return ledger.getShard(ledger.shardOf(address)).getUncommittedBlock().getAccount(address).getBalance();
+    }
+}
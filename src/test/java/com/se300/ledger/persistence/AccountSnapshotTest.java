@@ -0,0 +1,130 @@
+package com.se300.ledger.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.se300.ledger.Account;
+import com.se300.ledger.Ledger;
+import com.se300.ledger.LedgerException;
+import com.se300.ledger.Transaction;
+import com.se300.ledger.WriteAheadLog;
+
+/**
+ * Tests for restarting the Ledger from an account snapshot and the write ahead log tail
+ */
+public class AccountSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private Ledger ledger;
+    private Path logFile;
+    private Path snapshots;
+
+    @BeforeEach
+    public void setUp() throws LedgerException {
+        ledger = Ledger.getInstance("test", "test ledger 2023", "chapman");
+        logFile = directory.resolve("ledger.wal");
+        snapshots = directory.resolve("snapshots");
+        ledger.attachWriteAheadLog(logFile, WriteAheadLog.Durability.SYNC);
+        ledger.createAccount("mary");
+        ledger.createAccount("bob");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ledger.reset();
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        ledger.setSnapshotInterval(snapshots, 2);
+        transfer(0, 45);
+        ledger.awaitSnapshots();
+
+        assertTrue(Files.exists(snapshots.resolve("snapshot-0000000004.dat")));
+        assertFalse(Files.exists(snapshots.resolve("snapshot-0000000002.dat")));
+
+        //Transaction ids are written incrementally next to the snapshots
+        assertTrue(Files.exists(snapshots.resolve("transactions-0000000002.dat")));
+        assertTrue(Files.exists(snapshots.resolve("transactions-0000000004.dat")));
+
+        //Damaged snapshot is skipped in favor of the previous one
+        Files.write(snapshots.resolve("snapshot-0000000099.dat"), new byte[] {1, 2, 3});
+
+        Map<String, Integer> balances = ledger.getAccountBalances();
+        String tipHash = ledger.getBlock(4).getHash();
+        ledger.reset();
+
+        //Only the transactions of the open block are replayed
+        assertEquals(5, ledger.restore(snapshots, logFile, WriteAheadLog.Durability.SYNC));
+        assertEquals(4, ledger.getNumberOfBlocks());
+        assertEquals(balances, ledger.getAccountBalances());
+        assertEquals(tipHash, ledger.getUncommittedBlock().getPreviousHash());
+        assertNotNull(ledger.getTransaction("tx44"));
+        assertEquals(0, ledger.getValidatedThrough());
+
+        //Ids committed before the snapshot are still unique
+        LedgerException duplicate = assertThrows(LedgerException.class, () -> transfer(3, 4));
+        assertEquals("Transaction Id Must Be Unique", duplicate.getReason());
+
+        transfer(45, 50);
+        assertEquals(5, ledger.getNumberOfBlocks());
+        assertDoesNotThrow(() -> ledger.validate());
+        assertEquals(5, ledger.getValidatedThrough());
+
+        //Blocks covered by the snapshot are not available without a block store
+        assertTrue(ledger.audit().isEmpty());
+        String restoredHash = ledger.getBlock(5).getHash();
+
+        //Full replay of the log arrives at the same chain
+        ledger.reset();
+        ledger.attachWriteAheadLog(logFile, WriteAheadLog.Durability.SYNC);
+        assertEquals(restoredHash, ledger.getBlock(5).getHash());
+        assertDoesNotThrow(() -> ledger.validate());
+    }
+
+    @Test
+    public void testRestoreWithBlockStore() throws Exception {
+        Path blocks = directory.resolve("blocks");
+        ledger.attachBlockStore(blocks, 2);
+        transfer(0, 30);
+        Files.createDirectories(snapshots);
+        ledger.writeSnapshot(snapshots.resolve("snapshot-0000000003.dat"));
+        String hash = ledger.getBlock(2).getHash();
+        ledger.reset();
+
+        assertEquals(0, ledger.restore(snapshots, logFile, WriteAheadLog.Durability.SYNC));
+        ledger.attachBlockStore(blocks, 2);
+
+        assertEquals(hash, ledger.getBlock(2).getHash());
+        transfer(30, 40);
+        assertEquals(ledger.getBlock(3).getHash(), ledger.getBlock(4).getPreviousHash());
+        assertTrue(ledger.audit().isEmpty());
+        assertDoesNotThrow(() -> ledger.validate());
+    }
+
+    private void transfer(int from, int to) throws LedgerException {
+        for (int i = from; i < to; i++) {
+            String payer = i % 3 == 0 ? "master" : "mary";
+            String receiver = i % 3 == 0 ? "mary" : "bob";
+            Account payerAccount = ledger.getUncommittedBlock().getAccount(payer);
+            Account receiverAccount = ledger.getUncommittedBlock().getAccount(receiver);
+            ledger.processTransaction(new Transaction("tx" + i, i % 3 == 0 ? 1000 : 10, 10, "snapshot",
+                    payerAccount, receiverAccount));
+        }
+    }
+}
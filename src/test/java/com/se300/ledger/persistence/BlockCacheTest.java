@@ -0,0 +1,127 @@
+package com.se300.ledger.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.se300.ledger.Account;
+import com.se300.ledger.Block;
+import com.se300.ledger.BlockCache;
+import com.se300.ledger.Ledger;
+import com.se300.ledger.LedgerException;
+import com.se300.ledger.Transaction;
+
+/**
+ * Tests for caching stored blocks in front of the block store
+ */
+public class BlockCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private Ledger ledger;
+
+    @BeforeEach
+    public void setUp() throws LedgerException {
+        ledger = Ledger.getInstance("test", "test ledger 2023", "chapman");
+        ledger.reset();
+        ledger.createAccount("mary");
+        ledger.createAccount("bob");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ledger.reset();
+    }
+
+    @Test
+    public void testCachedBlocks() throws Exception {
+        assertThrows(LedgerException.class, () -> ledger.setBlockCache(1 << 20));
+
+        ledger.attachBlockStore(directory, 1);
+        transfer(0, 60);
+        Map<String, Integer> balances = getBalances(ledger.getBlock(2));
+
+        ledger.setBlockCache(1 << 20);
+        BlockCache cache = ledger.getBlockCache();
+        Block block = ledger.getBlock(2);
+        assertSame(block, ledger.getBlock(2));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+
+        //Accounts not changed by a cached block come from the account history, not earlier blocks
+        assertEquals(balances, getBalances(block));
+        assertEquals(1, cache.getBlockCount());
+        assertEquals(getBalances(ledger.getBlock(5)), getBalances(ledger.getBlock(5)));
+        assertEquals(2, cache.getBlockCount());
+
+        //Walking back from a cached block goes through the cache
+        assertEquals(ledger.getBlock(1).getHash(), block.getPreviousBlock().getHash());
+        assertSame(ledger.getBlock(1), block.getPreviousBlock());
+        assertEquals(3, cache.getBlockCount());
+        assertEquals(0, cache.getEvictionCount());
+        assertDoesNotThrow(() -> ledger.validate());
+        assertTrue(ledger.audit().isEmpty());
+
+        ledger.setBlockCache(0);
+        assertNull(ledger.getBlockCache());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ledger.attachBlockStore(directory, 1);
+        transfer(0, 60);
+        String[] hashes = new String[5];
+        for (int blockNumber = 1; blockNumber <= 5; blockNumber++) {
+            hashes[blockNumber - 1] = ledger.getBlock(blockNumber).getHash();
+        }
+
+        //Room for two blocks of ten transactions
+        ledger.setBlockCache(5000);
+        BlockCache cache = ledger.getBlockCache();
+        for (int round = 0; round < 3; round++) {
+            for (int blockNumber = 1; blockNumber <= 5; blockNumber++) {
+                assertEquals(hashes[blockNumber - 1], ledger.getBlock(blockNumber).getHash());
+            }
+        }
+
+        assertTrue(cache.getBlockCount() <= 2);
+        assertTrue(cache.getSize() <= cache.getCapacity());
+        assertTrue(cache.getEvictionCount() >= 13);
+        assertEquals(15, cache.getHitCount() + cache.getMissCount());
+
+        //Most recently used block stays cached
+        long misses = cache.getMissCount();
+        ledger.getBlock(5);
+        assertEquals(misses, cache.getMissCount());
+    }
+
+    private void transfer(int from, int to) throws LedgerException {
+        for (int i = from; i < to; i++) {
+            String payer = i % 3 == 0 ? "master" : "mary";
+            String receiver = i % 3 == 0 ? "mary" : "bob";
+            Account payerAccount = ledger.getUncommittedBlock().getAccount(payer);
+            Account receiverAccount = ledger.getUncommittedBlock().getAccount(receiver);
+            ledger.processTransaction(new Transaction("tx" + i, i % 3 == 0 ? 1000 : 10, 10, "cache",
+                    payerAccount, receiverAccount));
+        }
+    }
+
+    private static Map<String, Integer> getBalances(Block block) {
+        Map<String, Integer> balances = new HashMap<>();
+        block.getAccountBalanceMap().forEach((address, account) -> balances.put(address, account.getBalance()));
+        return balances;
+    }
+}
@@ -0,0 +1,174 @@
+package com.se300.ledger.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.se300.ledger.Account;
+import com.se300.ledger.Block;
+import com.se300.ledger.BlockStore;
+import com.se300.ledger.Ledger;
+import com.se300.ledger.LedgerException;
+import com.se300.ledger.Transaction;
+
+/**
+ * Tests for keeping committed blocks in memory mapped segment files
+ */
+public class BlockStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private Ledger ledger;
+
+    @BeforeEach
+    public void setUp() throws LedgerException {
+        ledger = Ledger.getInstance("test", "test ledger 2023", "chapman");
+        ledger.reset();
+        ledger.createAccount("mary");
+        ledger.createAccount("bob");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ledger.reset();
+    }
+
+    @Test
+    public void testLazyBlocks() throws Exception {
+        transfer(0, 30);
+        String[] hashes = new String[3];
+        for (int blockNumber = 1; blockNumber <= 3; blockNumber++) {
+            hashes[blockNumber - 1] = ledger.getBlock(blockNumber).getHash();
+        }
+        Map<String, Integer> balances = getBalances(ledger.getBlock(2));
+
+        ledger.attachBlockStore(directory, 1);
+        transfer(30, 60);
+
+        assertEquals(6, ledger.getNumberOfBlocks());
+        assertNotSame(ledger.getBlock(1), ledger.getBlock(1));
+        for (int blockNumber = 1; blockNumber <= 3; blockNumber++) {
+            assertEquals(hashes[blockNumber - 1], ledger.getBlock(blockNumber).getHash());
+        }
+        assertEquals(balances, getBalances(ledger.getBlock(2)));
+        assertEquals(ledger.getBlock(2).getAccountBalanceMap().get("bob").getBalance(),
+                ledger.getBlock(2).getAccount("bob").getBalance());
+        assertEquals("tx3", ledger.getTransaction("tx3").getTransactionId());
+        assertTrue(Ledger.verifyInclusionProof(ledger.getInclusionProof("tx3"), hashes[0]));
+
+        assertDoesNotThrow(() -> ledger.validate());
+        assertTrue(ledger.audit().isEmpty());
+
+        String lastHash = ledger.getBlock(6).getHash();
+        ledger.reset();
+
+        //Offset index is rebuilt from the segments
+        try (BlockStore store = new BlockStore(directory, BlockStore.DEFAULT_SEGMENT_SIZE)) {
+            assertEquals(6, store.getLastBlockNumber());
+            assertEquals(lastHash, store.readBlock(6).getHash());
+            assertEquals(hashes[1], store.readBlock(3).getPreviousHash());
+            assertNull(store.readBlock(7));
+        }
+    }
+
+    @Test
+    public void testSegments() throws Exception {
+        transfer(0, 50);
+
+        try (BlockStore store = new BlockStore(directory, 2048)) {
+            for (int blockNumber = 1; blockNumber <= 5; blockNumber++) {
+                store.append(ledger.getBlock(blockNumber));
+            }
+            assertTrue(store.getSegmentCount() > 1);
+        }
+
+        try (BlockStore store = new BlockStore(directory, 2048)) {
+            assertEquals(5, store.getLastBlockNumber());
+            for (int blockNumber = 1; blockNumber <= 5; blockNumber++) {
+                Block block = store.readBlock(blockNumber);
+                assertEquals(ledger.getBlock(blockNumber).getHash(), block.getHash());
+                assertEquals(ledger.getBlock(blockNumber).getTransactionList().toString(),
+                        block.getTransactionList().toString());
+            }
+        }
+    }
+
+    @Test
+    public void testFailedAppend() throws Exception {
+        transfer(0, 50);
+
+        try (BlockStore store = new BlockStore(directory, 2048)) {
+            //Second segment cannot be mapped
+            Files.createDirectory(directory.resolve("segment-00001.dat"));
+            int blockNumber = 1;
+            try {
+                for (; blockNumber <= 5; blockNumber++) {
+                    store.append(ledger.getBlock(blockNumber));
+                }
+            } catch (IOException e) {
+                //Expected once the first segment is full
+            }
+            assertTrue(store.hasFailed());
+            assertEquals(blockNumber - 1, store.getLastBlockNumber());
+
+            //Store keeps rejecting appends, also in order
+            int next = blockNumber;
+            assertThrows(IOException.class, () -> store.append(ledger.getBlock(next)));
+        }
+    }
+
+    @Test
+    public void testClosedStore() throws Exception {
+        ledger.attachBlockStore(directory, 1);
+        transfer(0, 30);
+        assertDoesNotThrow(() -> ledger.validate());
+        transfer(30, 40);
+
+        //Blocks no longer in memory are missing once the store has been closed
+        ledger.getBlockStore().close();
+        assertNull(ledger.getBlockStore().readBlock(1));
+        assertNull(ledger.getBlock(4).getPreviousBlock());
+        LedgerException e = assertThrows(LedgerException.class, () -> ledger.validate());
+        assertEquals("Block 3 Is Missing", e.getReason());
+
+        //Committing the next block fails the store, transactions are rejected from then on
+        assertFalse(ledger.hasBlockStoreFailed());
+        transfer(40, 50);
+        assertTrue(ledger.hasBlockStoreFailed());
+        e = assertThrows(LedgerException.class, () -> transfer(50, 51));
+        assertEquals("Block Store Failed", e.getReason());
+    }
+
+    private void transfer(int from, int to) throws LedgerException {
+        for (int i = from; i < to; i++) {
+            String payer = i % 3 == 0 ? "master" : "mary";
+            String receiver = i % 3 == 0 ? "mary" : "bob";
+            Account payerAccount = ledger.getUncommittedBlock().getAccount(payer);
+            Account receiverAccount = ledger.getUncommittedBlock().getAccount(receiver);
+            ledger.processTransaction(new Transaction("tx" + i, i % 3 == 0 ? 1000 : 10, 10, "store",
+                    payerAccount, receiverAccount));
+        }
+    }
+
+    private static Map<String, Integer> getBalances(Block block) {
+        Map<String, Integer> balances = new HashMap<>();
+        block.getAccountBalanceMap().forEach((address, account) -> balances.put(address, account.getBalance()));
+        return balances;
+    }
+}
@@ -0,0 +1,154 @@
+package com.se300.ledger.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.se300.ledger.Account;
+import com.se300.ledger.BlockSealPolicy;
+import com.se300.ledger.Ledger;
+import com.se300.ledger.LedgerException;
+import com.se300.ledger.Transaction;
+import com.se300.ledger.WriteAheadLog;
+
+/**
+ * Tests for recovering the Ledger from the write ahead log
+ */
+public class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    private Ledger ledger;
+    private Path logFile;
+
+    @BeforeEach
+    public void setUp() throws LedgerException {
+        ledger = Ledger.getInstance("test", "test ledger 2023", "chapman");
+        logFile = directory.resolve("ledger.wal");
+        ledger.attachWriteAheadLog(logFile, WriteAheadLog.Durability.SYNC);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ledger.setBlockSealPolicy(BlockSealPolicy.DEFAULT);
+        ledger.reset();
+    }
+
+    @Test
+    public void testReplay() throws LedgerException {
+        ledger.createAccount("mary");
+        ledger.createAccount("bob");
+
+        for (int i = 0; i < 25; i++) {
+            if (i % 2 == 0) {
+                transfer("tx" + i, "master", "mary", 100);
+            } else {
+                transfer("tx" + i, "mary", "bob", 10);
+            }
+        }
+
+        //Seal a block early by tightening the policy
+        transfer("early0", "mary", "bob", 10);
+        ledger.setBlockSealPolicy(new BlockSealPolicy(6, 0, 0));
+        ledger.setBlockSealPolicy(BlockSealPolicy.DEFAULT);
+        transfer("early1", "mary", "bob", 10);
+
+        Map<String, Integer> balances = ledger.getAccountBalances();
+        int blocks = ledger.getNumberOfBlocks();
+        String lastHash = ledger.getBlock(blocks).getHash();
+
+        ledger.reset();
+        assertEquals(0, ledger.getNumberOfBlocks());
+
+        assertEquals(32, ledger.attachWriteAheadLog(logFile, WriteAheadLog.Durability.SYNC));
+        assertEquals(3, ledger.getNumberOfBlocks());
+        assertEquals(6, ledger.getBlock(3).getTransactionList().size());
+        assertEquals(lastHash, ledger.getBlock(blocks).getHash());
+        assertEquals(balances, ledger.getAccountBalances());
+        assertNotNull(ledger.getTransaction("early1"));
+        assertDoesNotThrow(() -> ledger.validate());
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        ledger.createAccount("mary");
+        for (int i = 0; i < 12; i++) {
+            transfer("tx" + i, "master", "mary", 100);
+        }
+        ledger.reset();
+
+        //Crash in the middle of writing the last record
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        assertEquals(13, ledger.attachWriteAheadLog(logFile, WriteAheadLog.Durability.SYNC));
+        assertNull(ledger.getTransaction("tx11"));
+        assertNotNull(ledger.getTransaction("tx10"));
+
+        //New records follow the last complete one
+        transfer("tx11", "master", "mary", 100);
+        ledger.reset();
+        assertEquals(14, ledger.attachWriteAheadLog(logFile, WriteAheadLog.Durability.SYNC));
+        assertNotNull(ledger.getTransaction("tx11"));
+        assertEquals(1200, ledger.getUncommittedBlock().getAccount("mary").getBalance());
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        int threads = 4;
+        int transfers = 200;
+        for (int t = 0; t < threads; t++) {
+            ledger.createAccount("account" + t);
+            transfer("fund" + t, "master", "account" + t, 100000);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < transfers; i++) {
+                    transfer(thread + "-" + i, "account" + thread, "account" + ((thread + 1) % threads), 1);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        Map<String, Integer> balances = ledger.getAccountBalances();
+        int blocks = ledger.getNumberOfBlocks();
+        ledger.reset();
+
+        ledger.attachWriteAheadLog(logFile, WriteAheadLog.Durability.SYNC);
+        assertEquals(blocks, ledger.getNumberOfBlocks());
+        assertEquals(balances, ledger.getAccountBalances());
+        assertDoesNotThrow(() -> ledger.validate());
+    }
+
+    private void transfer(String transactionId, String payer, String receiver, int amount) throws LedgerException {
+        Account payerAccount = ledger.getUncommittedBlock().getAccount(payer);
+        Account receiverAccount = ledger.getUncommittedBlock().getAccount(receiver);
+        ledger.processTransaction(new Transaction(transactionId, amount, 10, "wal", payerAccount, receiverAccount));
+    }
+}
@@ -0,0 +1,128 @@
+package com.se300.ledger.replication;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.se300.ledger.Account;
+import com.se300.ledger.Ledger;
+import com.se300.ledger.LedgerException;
+import com.se300.ledger.LedgerRegistry;
+import com.se300.ledger.ReplicationFollower;
+import com.se300.ledger.ReplicationLeader;
+import com.se300.ledger.Transaction;
+
+/**
+ * Tests for replicating committed blocks from a leader to followers over a loopback socket
+ */
+public class ReplicationTest {
+
+    private static final long TIMEOUT = 10000;
+
+    private LedgerRegistry registry;
+    private Ledger leader;
+
+    @BeforeEach
+    public void setUp() throws LedgerException {
+        registry = new LedgerRegistry();
+        leader = registry.createLedger("leader", "leader ledger", "chapman");
+        leader.createAccount("mary");
+        leader.createAccount("bob");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    public void testFollowersConverge() throws Exception {
+        transfer(0, 25);
+        try (ReplicationLeader replicationLeader = new ReplicationLeader(leader, 0)) {
+            Ledger first = registry.createLedger("first", "first follower", "chapman");
+            Ledger second = registry.createLedger("second", "second follower", "chapman");
+
+            try (ReplicationFollower firstFollower = new ReplicationFollower(first, "localhost",
+                    replicationLeader.getPort())) {
+                //Second follower joins after more blocks have been committed
+                transfer(25, 50);
+                try (ReplicationFollower secondFollower = new ReplicationFollower(second, "localhost",
+                        replicationLeader.getPort())) {
+                    transfer(50, 60);
+
+                    assertTrue(firstFollower.awaitBlock(6, TIMEOUT));
+                    assertTrue(secondFollower.awaitBlock(6, TIMEOUT));
+                    assertNull(firstFollower.getFailure());
+                    assertNull(secondFollower.getFailure());
+                }
+            }
+
+            for (Ledger follower : new Ledger[] {first, second}) {
+                assertEquals(6, follower.getNumberOfBlocks());
+                assertEquals(leader.getBlock(6).getHash(), follower.getBlock(6).getHash());
+                assertEquals(leader.getAccountBalances(), follower.getAccountBalances());
+                assertEquals(leader.getAccountBalance("bob"), follower.getAccountBalance("bob"));
+                assertNotNull(follower.getTransaction("tx42"));
+                assertDoesNotThrow(() -> follower.validate());
+            }
+            assertEquals(12, replicationLeader.getSentBlockCount());
+        }
+    }
+
+    @Test
+    public void testCatchUpFromBlock() throws Exception {
+        transfer(0, 40);
+        Ledger follower = registry.createLedger("follower", "follower ledger", "chapman");
+        follower.applyBlock(leader.getBlock(1));
+        follower.applyBlock(leader.getBlock(2));
+
+        try (ReplicationLeader replicationLeader = new ReplicationLeader(leader, 0);
+             ReplicationFollower replicationFollower = new ReplicationFollower(follower, "localhost",
+                     replicationLeader.getPort())) {
+            assertTrue(replicationFollower.awaitBlock(4, TIMEOUT));
+            assertEquals(2, replicationLeader.getSentBlockCount());
+        }
+        assertEquals(leader.getBlock(4).getHash(), follower.getBlock(4).getHash());
+        assertDoesNotThrow(() -> follower.validate());
+    }
+
+    @Test
+    public void testRejectedBlocks() throws Exception {
+        transfer(0, 20);
+        Ledger follower = registry.createLedger("follower", "follower ledger", "other seed");
+
+        LedgerException e = assertThrows(LedgerException.class, () -> follower.applyBlock(leader.getBlock(2)));
+        assertEquals("Block Is Out Of Order", e.getReason());
+        e = assertThrows(LedgerException.class, () -> follower.applyBlock(leader.getBlock(1)));
+        assertEquals("Block Hash Does Not Match", e.getReason());
+
+        //Replication stops at the first block that does not match
+        Ledger diverged = registry.createLedger("diverged", "diverged ledger", "other seed");
+        try (ReplicationLeader replicationLeader = new ReplicationLeader(leader, 0);
+             ReplicationFollower replicationFollower = new ReplicationFollower(diverged, "localhost",
+                     replicationLeader.getPort())) {
+            assertFalse(replicationFollower.awaitBlock(2, TIMEOUT));
+            assertFalse(replicationFollower.isConnected());
+            assertEquals("Block Hash Does Not Match", replicationFollower.getFailure().getReason());
+        }
+    }
+
+    private void transfer(int from, int to) throws LedgerException {
+        for (int i = from; i < to; i++) {
+            String payer = i % 3 == 0 ? "master" : "mary";
+            String receiver = i % 3 == 0 ? "mary" : "bob";
+            Account payerAccount = leader.getUncommittedBlock().getAccount(payer);
+            Account receiverAccount = leader.getUncommittedBlock().getAccount(receiver);
+            leader.processTransaction(new Transaction("tx" + i, i % 3 == 0 ? 1000 : 10, 10, "replicated",
+                    payerAccount, receiverAccount));
+        }
+    }
+}